@@ -0,0 +1,86 @@
+package org.gonn.gava.benchmark;
+
+import org.gonn.gava.ByteSearch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// ByteSearch on a byte[] against the plain byte loop it replaces
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteSearchBenchmark {
+    @State(Scope.Thread)
+    public static class Lines {
+        // Average line length: short fields (Tokenizer) to long lines (LineLoader)
+        @Param({"8", "80", "1000"})
+        public int lineLength;
+
+        public byte[] data;
+
+        @Setup
+        public void setup() {
+            Random random = new Random(42);
+            this.data = new byte[64 * 1024];
+            for (int i = 0; i < this.data.length; i++) {
+                this.data[i] = random.nextInt(this.lineLength) == 0 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+            }
+        }
+    }
+
+    @Benchmark
+    public int countSwar(Lines s) {
+        return ByteSearch.count(s.data, 0, s.data.length, (byte) '\n');
+    }
+
+    @Benchmark
+    public int countLoop(Lines s) {
+        byte[] b = s.data;
+        int out = 0;
+        for (int i = 0; i < b.length; i++) {
+            if (b[i] == '\n') out++;
+        }
+        return out;
+    }
+
+    // Every line, as a reader would split them
+    @Benchmark
+    public int indexOfSwar(Lines s) {
+        byte[] b = s.data;
+        int lines = 0;
+        for (int i = 0; (i = ByteSearch.indexOf(b, i, b.length, (byte) '\n')) >= 0; i++) lines++;
+        return lines;
+    }
+
+    @Benchmark
+    public int indexOfLoop(Lines s) {
+        byte[] b = s.data;
+        int lines = 0;
+        for (int i = 0; (i = indexOf(b, i, b.length, (byte) '\n')) >= 0; i++) lines++;
+        return lines;
+    }
+
+    @Benchmark
+    public boolean allInRangeSwar(Lines s) {
+        return ByteSearch.allInRange(s.data, 0, s.data.length, 0, 0x7F);
+    }
+
+    @Benchmark
+    public boolean allInRangeLoop(Lines s) {
+        byte[] b = s.data;
+        for (int i = 0; i < b.length; i++) {
+            if (b[i] < 0) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] b, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == value) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,54 @@
+package org.gonn.gava.benchmark;
+
+import org.gonn.gava.FixedRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FixedRecordBenchmark {
+    @Param({"20", "200"})
+    public int recordWidth;
+
+    @Param({"100000"})
+    public int records;
+
+    private byte[] data;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        this.data = new byte[this.recordWidth * this.records];
+        Random rnd = new Random(42);
+        for (int i = 0; i < this.data.length; i++) this.data[i] = (byte) ('0' + rnd.nextInt(10));
+        this.file = Files.createTempFile("gava-bench-", ".dat");
+        Files.write(this.file, this.data);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public int readInputStream(Blackhole bh) throws IOException {
+        return FixedRecord.readInputStream(new ByteArrayInputStream(this.data), this.recordWidth,
+                r -> bh.consume(r.get(0)));
+    }
+
+    @Benchmark
+    public long readFile(Blackhole bh) throws IOException {
+        return FixedRecord.readFile(this.file, this.recordWidth, r -> bh.consume(r.get(0)));
+    }
+}
@@ -0,0 +1,49 @@
+package org.gonn.gava.benchmark;
+
+import org.gonn.gava.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ObjectPoolBenchmark {
+    @Param({"16", "1024"})
+    public int poolSize;
+
+    private ObjectPool<StringBuilder> pool;
+
+    @Setup
+    public void setup() {
+        this.pool = new ObjectPool<>(() -> new StringBuilder(64), sb -> sb.setLength(0), this.poolSize);
+    }
+
+    private StringBuilder borrow() {
+        StringBuilder sb = this.pool.get();
+        sb.append('x');
+        this.pool.release(sb);
+        return sb;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public StringBuilder getRelease() {
+        return this.borrow();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public StringBuilder getRelease4Threads() {
+        return this.borrow();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public StringBuilder getRelease32Threads() {
+        return this.borrow();
+    }
+}
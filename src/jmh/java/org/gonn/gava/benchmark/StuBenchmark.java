@@ -0,0 +1,62 @@
+package org.gonn.gava.benchmark;
+
+import org.gonn.gava.Stu;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StuBenchmark {
+    @State(Scope.Thread)
+    public static class Numbers {
+        @Param({"7", "12345", "-123456789"})
+        public String number;
+    }
+
+    @State(Scope.Thread)
+    public static class Lines {
+        @Param({"5", "20"})
+        public int fields;
+
+        public String line;
+
+        @Setup
+        public void setup() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < this.fields; i++) {
+                if (i > 0) sb.append('|');
+                sb.append("field").append(i);
+            }
+            this.line = sb.toString();
+        }
+    }
+
+    @Benchmark
+    public int parseInt(Numbers s) {
+        return Stu.parseInt(s.number);
+    }
+
+    @Benchmark
+    public String getNthFirst(Lines s) {
+        return Stu.getNth(s.line, '|', 1);
+    }
+
+    @Benchmark
+    public String getNthLast(Lines s) {
+        return Stu.getNth(s.line, '|', -1);
+    }
+
+    @Benchmark
+    public int count(Lines s) {
+        return Stu.count(s.line, '|');
+    }
+
+    @Benchmark
+    public String epochToString() {
+        return Stu.epochToString();
+    }
+}
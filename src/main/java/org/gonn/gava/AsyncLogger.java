@@ -0,0 +1,294 @@
+package org.gonn.gava;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Logger that takes messages on the caller's thread and writes them on a background thread.
+ * A log call only takes the time and claims a slot in a bounded ring buffer with one compare-and-set;
+ * the writer thread formats whole batches into one byte buffer and writes it with a single call.
+ * When the ring is full, messages are dropped (and counted) or the caller waits, depending on Overflow.
+ * Lines look like "2024-03-09T14:05:09.042-06:00 INFO  message".
+ * <br>
+ * Example:
+ * <pre><code>
+ *         AsyncLogger logger = AsyncLogger.open(Paths.get("app.log")).setLevel(AsyncLogger.Level.INFO);
+ *         Stu.setLogger(logger); // Stu.log() goes through the logger
+ *         logger.debug(() -&gt; "expensive " + dump()); // not evaluated at INFO
+ *         ...
+ *         logger.close();
+ * </code></pre>
+ */
+public class AsyncLogger implements Closeable {
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int BATCH_BYTES = 64 * 1024;
+
+    public enum Level {DEBUG, INFO, WARN, ERROR}
+
+    public enum Overflow {DROP, BLOCK}
+
+    // Ring buffer: slot i holds an entry when sequence[i] == position + 1 (Vyukov's bounded queue)
+    private final int mask;
+    private final AtomicLongArray sequence;
+    private final long[] times;
+    private final Level[] levels;
+    private final String[] messages;
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0; // writer thread only
+
+    private final OutputStream out;
+    private final boolean ownsStream;
+    private final Overflow overflow;
+    private final TimestampFormatter timestamp;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile Level level = Level.INFO;
+    private volatile boolean closed = false;
+    private volatile long writtenUpTo = 0; // entries before this are written
+    private boolean failed = false;        // writer thread only
+
+    /**
+     * @param out      where to write; not closed by close()
+     * @param capacity entries in the ring buffer; rounded up to a power of two
+     * @param overflow what to do when the ring buffer is full
+     */
+    public AsyncLogger(OutputStream out, int capacity, Overflow overflow) {
+        this(out, false, capacity, overflow);
+    }
+
+    private AsyncLogger(OutputStream out, boolean ownsStream, int capacity, Overflow overflow) {
+        if (out == null || overflow == null) throw new IllegalArgumentException("null input");
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        int size = capacity == 1 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) this.sequence.set(i, i);
+        this.times = new long[size];
+        this.levels = new Level[size];
+        this.messages = new String[size];
+        this.out = out;
+        this.ownsStream = ownsStream;
+        this.overflow = overflow;
+        this.timestamp = TimestampFormatter.newInstance();
+        this.writer = new Thread(this::drainLoop, "gava-logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Logs to System.out, dropping messages when full
+    public static AsyncLogger newInstance() {
+        return new AsyncLogger(System.out, DEFAULT_CAPACITY, Overflow.DROP);
+    }
+
+    // Appends to a file, which is closed by close()
+    public static AsyncLogger open(Path path) throws IOException {
+        OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new AsyncLogger(out, true, DEFAULT_CAPACITY, Overflow.DROP);
+    }
+
+    public AsyncLogger setLevel(Level level) {
+        if (level == null) throw new IllegalArgumentException("null level");
+        this.level = level;
+        return this;
+    }
+
+    public Level getLevel() {return this.level;}
+
+    public boolean isEnabled(Level level) {return level.ordinal() >= this.level.ordinal();}
+
+    public void log(Level level, String msg) {
+        if (!this.isEnabled(level)) return;
+        this.offer(level, msg);
+    }
+
+    // The message is only built when the level is enabled
+    public void log(Level level, Supplier<String> msg) {
+        if (!this.isEnabled(level)) return;
+        this.offer(level, msg.get());
+    }
+
+    public void debug(String msg) {this.log(Level.DEBUG, msg);}
+
+    public void debug(Supplier<String> msg) {this.log(Level.DEBUG, msg);}
+
+    public void info(String msg) {this.log(Level.INFO, msg);}
+
+    public void info(Supplier<String> msg) {this.log(Level.INFO, msg);}
+
+    public void warn(String msg) {this.log(Level.WARN, msg);}
+
+    public void warn(Supplier<String> msg) {this.log(Level.WARN, msg);}
+
+    public void error(String msg) {this.log(Level.ERROR, msg);}
+
+    public void error(Supplier<String> msg) {this.log(Level.ERROR, msg);}
+
+    // Messages dropped because the ring buffer was full, or logged after close()
+    public long countDropped() {return this.dropped.sum();}
+
+    private void offer(Level level, String msg) {
+        long time = System.currentTimeMillis();
+        int spins = 0;
+        while (true) {
+            if (this.closed) {
+                this.dropped.increment();
+                return;
+            }
+            long pos = this.tail.get();
+            int slot = (int) pos & this.mask;
+            long seq = this.sequence.get(slot);
+            if (seq == pos) {
+                if (this.tail.compareAndSet(pos, pos + 1)) {
+                    this.times[slot] = time;
+                    this.levels[slot] = level;
+                    this.messages[slot] = msg;
+                    this.sequence.lazySet(slot, pos + 1); // publishes the entry
+                    return;
+                }
+            } else if (seq < pos) { // full
+                if (this.overflow == Overflow.DROP || !this.writer.isAlive()) { // nobody left to make room
+                    this.dropped.increment();
+                    return;
+                }
+                if (++spins > 100) LockSupport.parkNanos(50_000L);
+                else Thread.yield();
+            }
+        }
+    }
+
+    // Writes everything logged so far, from the caller's thread point of view
+    public void flush() {
+        long target = this.tail.get();
+        while (this.writtenUpTo < target && this.writer.isAlive()) LockSupport.parkNanos(100_000L);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.ownsStream) this.out.close();
+    }
+
+    private void drainLoop() {
+        byte[] buf = new byte[BATCH_BYTES];
+        int idle = 0;
+        while (true) {
+            int len = 0;
+            boolean any = false;
+            while (this.sequence.get((int) this.head & this.mask) == this.head + 1) {
+                int slot = (int) this.head & this.mask;
+                String msg = this.messages[slot];
+                Level lv = this.levels[slot];
+                long time = this.times[slot];
+                this.messages[slot] = null;
+                this.sequence.lazySet(slot, this.head + this.mask + 1); // frees the slot
+                this.head++;
+                any = true;
+
+                int need = TimestampFormatter.LENGTH + 7 + (msg == null ? 4 : msg.length() * 3) + 1;
+                if (len + need > buf.length) {
+                    len = this.write(buf, len);
+                    if (need > buf.length) buf = new byte[need];
+                }
+                int lineStart = len;
+                try {
+                    len = this.timestamp.format(time, buf, len);
+                    buf[len++] = ' ';
+                    len = writeLevel(lv, buf, len);
+                    len = utf8(msg == null ? "null" : msg, buf, len);
+                    buf[len++] = '\n';
+                } catch (RuntimeException e) { // drop the line, keep the thread
+                    len = lineStart;
+                    this.reportFailure(e);
+                }
+            }
+            if (any) {
+                this.write(buf, len);
+                this.flushStream();
+                this.writtenUpTo = this.head;
+                idle = 0;
+                if (buf.length > BATCH_BYTES) buf = new byte[BATCH_BYTES];
+                continue;
+            }
+            if (this.closed && this.head == this.tail.get()) break;
+            // Back off while idle: up to 10ms between checks
+            LockSupport.parkNanos(Math.min(10_000_000L, 10_000L << Math.min(idle++, 10)));
+        }
+        this.flushStream();
+    }
+
+    private int write(byte[] buf, int len) {
+        try {
+            this.out.write(buf, 0, len);
+        } catch (IOException | RuntimeException e) {
+            this.reportFailure(e);
+        }
+        return 0;
+    }
+
+    private void flushStream() {
+        try {
+            this.out.flush();
+        } catch (IOException | RuntimeException e) {
+            this.reportFailure(e);
+        }
+    }
+
+    // Reports the first failure only, and keeps draining so that callers never block on a broken stream
+    private void reportFailure(Exception e) {
+        if (this.failed) return;
+        this.failed = true;
+        PrintStream err = System.err;
+        err.println("AsyncLogger: failed to write: " + e);
+    }
+
+    private static int writeLevel(Level level, byte[] buf, int p) {
+        String name = level.name();
+        for (int i = 0; i < 5; i++) buf[p++] = (byte) (i < name.length() ? name.charAt(i) : ' ');
+        buf[p++] = ' ';
+        return p;
+    }
+
+    // Encodes as UTF-8; buf must have 3 bytes per char
+    private static int utf8(String s, byte[] buf, int p) {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[p++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[p++] = (byte) (0xC0 | c >> 6);
+                buf[p++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[p++] = (byte) (0xF0 | cp >> 18);
+                buf[p++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[p++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[p++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buf[p++] = '?';
+            } else {
+                buf[p++] = (byte) (0xE0 | c >> 12);
+                buf[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[p++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return p;
+    }
+}
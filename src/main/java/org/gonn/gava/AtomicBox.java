@@ -0,0 +1,79 @@
+package org.gonn.gava;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+// Thread-safe Box. Updates are compare-and-set loops, so modify() and accumulate() may call the
+// function more than once under contention; it should be free of side effects.
+public class AtomicBox<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AtomicBox, Object> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(AtomicBox.class, Object.class, "t");
+
+    private volatile T t;
+
+    public AtomicBox(T t) {this.t = t;}
+
+    public static <T> AtomicBox<T> of(T t) {return new AtomicBox<>(t);}
+
+    public T get() {return this.t;}
+
+    public AtomicBox<T> set(T t) {
+        this.t = t;
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getAndSet(T t) {return (T) VALUE.getAndSet(this, t);}
+
+    // Compares by reference (==), as AtomicReference does
+    public boolean compareAndSet(T expect, T update) {return VALUE.compareAndSet(this, expect, update);}
+
+    public AtomicBox<T> modify(UnaryOperator<T> mod) {
+        if (mod == null) throw new NullPointerException("given mod is null");
+        this.updateAndGet(mod);
+        return this;
+    }
+
+    // Returns the new value
+    public T updateAndGet(UnaryOperator<T> mod) {
+        if (mod == null) throw new NullPointerException("given mod is null");
+        T prev;
+        T next;
+        do {
+            prev = this.t;
+            next = mod.apply(prev);
+        } while (!VALUE.compareAndSet(this, prev, next));
+        return next;
+    }
+
+    /**
+     * Replaces the value with fn(value, x), such as accumulate(n, Integer::sum).
+     *
+     * @param x  value to combine with
+     * @param fn how to combine
+     * @return the new value
+     */
+    public T accumulate(T x, BinaryOperator<T> fn) {
+        if (fn == null) throw new NullPointerException("given fn is null");
+        T prev;
+        T next;
+        do {
+            prev = this.t;
+            next = fn.apply(prev, x);
+        } while (!VALUE.compareAndSet(this, prev, next));
+        return next;
+    }
+
+    // Returns if the value is null
+    public boolean isEmpty() {return this.t == null;}
+
+    public void clear() {this.t = null;}
+
+    @Override
+    public String toString() {
+        T v = this.t;
+        return v == null ? "null" : v.toString();
+    }
+}
@@ -0,0 +1,186 @@
+package org.gonn.gava;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe pool of heap or direct ByteBuffers in power-of-two size classes. Buffers are slices of
+ * large slabs that are allocated once, when a size class first runs dry, and never freed, so a job
+ * that releases what it gets runs with a flat footprint. Slabs are only allocated up to maxMemory;
+ * after that, get() falls back to an unpooled buffer.
+ * <br>
+ * Each thread keeps its last released buffer of each size class and gets it back without touching
+ * the shared pool. Buffers parked there by a thread that dies are lost to the pool, so turn that off
+ * with setThreadCache(false) when buffers are used from short-lived threads.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         BufferPool pool = BufferPool.newInstance(false);
+ *         ByteBuffer buf = pool.get(FixedRecord.DEFAULT_BUFFER_SIZE);
+ *         try {
+ *             FixedRecord.readInputStream(in, 120, consumer, buf);
+ *         } finally {
+ *             pool.release(buf);
+ *         }
+ * </code></pre>
+ */
+public class BufferPool {
+    public static final int DEFAULT_MIN_SIZE = 4 * 1024;
+    public static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_MAX_MEMORY = 64 * 1024 * 1024;
+
+    private final boolean direct;
+    private final int minShift;
+    private final int maxSize;
+    private final long maxMemory;
+    private final SizeClass[] classes;
+    private final AtomicLong allocated = new AtomicLong();
+    private final LongAdder unpooled = new LongAdder();
+    private final ThreadLocal<ByteBuffer[]> local;
+    private volatile boolean threadCache = true;
+
+    /**
+     * @param direct    direct (off-heap) or heap buffers
+     * @param minSize   smallest size class; a power of two
+     * @param maxSize   largest size class; a power of two
+     * @param slabSize  bytes allocated at a time for a size class (at least one buffer)
+     * @param maxMemory total bytes of slabs to allocate
+     */
+    public BufferPool(boolean direct, int minSize, int maxSize, int slabSize, long maxMemory) {
+        if (minSize <= 0 || Integer.bitCount(minSize) != 1)
+            throw new IllegalArgumentException("minSize must be a power of two");
+        if (maxSize < minSize || Integer.bitCount(maxSize) != 1)
+            throw new IllegalArgumentException("maxSize must be a power of two >= minSize");
+        if (slabSize <= 0) throw new IllegalArgumentException("slabSize must be > 0");
+        if (maxMemory < 0) throw new IllegalArgumentException("maxMemory must be >= 0");
+        this.direct = direct;
+        this.minShift = Integer.numberOfTrailingZeros(minSize);
+        this.maxSize = maxSize;
+        this.maxMemory = maxMemory;
+
+        int n = Integer.numberOfTrailingZeros(maxSize) - this.minShift + 1;
+        this.classes = new SizeClass[n];
+        for (int i = 0; i < n; i++) this.classes[i] = new SizeClass(minSize << i, slabSize);
+        this.local = ThreadLocal.withInitial(() -> new ByteBuffer[n]);
+    }
+
+    public static BufferPool newInstance(boolean direct) {
+        return new BufferPool(direct, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_SLAB_SIZE, DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     * Keeps the last released buffer of each size class in a thread-local slot. On by default.
+     *
+     * @param enabled use the thread-local slots or not
+     * @return this pool
+     */
+    public BufferPool setThreadCache(boolean enabled) {
+        this.threadCache = enabled;
+        return this;
+    }
+
+    /**
+     * Returns a buffer with position 0 and limit size. Its capacity is size rounded up to the size class.
+     * Sizes above the largest size class are allocated and not pooled.
+     *
+     * @param size bytes needed
+     * @return a buffer to hand back with release()
+     */
+    public ByteBuffer get(int size) {
+        if (size < 0) throw new IllegalArgumentException("size must be >= 0");
+        ByteBuffer out;
+        if (size > this.maxSize) {
+            this.unpooled.increment();
+            out = this.allocate(size);
+        } else {
+            int i = this.classOf(size);
+            out = null;
+            if (this.threadCache) {
+                ByteBuffer[] slots = this.local.get();
+                out = slots[i];
+                slots[i] = null;
+            }
+            if (out == null) out = this.classes[i].free.get();
+            out.clear();
+        }
+        out.limit(size);
+        return out;
+    }
+
+    /**
+     * Hands a buffer back. Buffers whose capacity is not a size class are dropped. Release a buffer
+     * only once, and do not use it afterwards.
+     *
+     * @param buffer buffer from get()
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() != this.direct) return;
+        int capacity = buffer.capacity();
+        if (capacity > this.maxSize || Integer.bitCount(capacity) != 1 || capacity < (1 << this.minShift)) return;
+        int i = this.classOf(capacity);
+        if (this.threadCache) {
+            ByteBuffer[] slots = this.local.get();
+            if (slots[i] == null) {
+                slots[i] = buffer;
+                return;
+            }
+        }
+        this.classes[i].free.release(buffer);
+    }
+
+    public boolean isDirect() {return this.direct;}
+
+    // Bytes of slabs allocated so far
+    public long countAllocated() {return this.allocated.get();}
+
+    // Buffers handed out that are not slices of a slab
+    public long countUnpooled() {return this.unpooled.sum();}
+
+    private int classOf(int size) {
+        if (size <= (1 << this.minShift)) return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - this.minShift;
+    }
+
+    private ByteBuffer allocate(int size) {
+        return this.direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    // Free buffers of one size, and the slab that new buffers are sliced from
+    private final class SizeClass {
+        private final int bufferSize;
+        private final int slabSize;
+        private final ObjectPool<ByteBuffer> free;
+        private ByteBuffer slab = null; // guarded by this
+        private int next = 0;           // guarded by this
+
+        SizeClass(int bufferSize, int slabSize) {
+            this.bufferSize = bufferSize;
+            this.slabSize = Math.max(bufferSize, slabSize / bufferSize * bufferSize);
+            // Room for every buffer that whole slabs can hold, counted in buffers rather than bytes; the
+            // free list only grows its arrays as buffers are released into it
+            long slabs = BufferPool.this.maxMemory / this.slabSize;
+            int maxBuffers = (int) Math.min(Integer.MAX_VALUE - 8, slabs * (this.slabSize / bufferSize));
+            this.free = new ObjectPool<>(this::slice, null, maxBuffers);
+        }
+
+        // Called by the free list on a miss
+        synchronized ByteBuffer slice() {
+            if (this.slab == null || this.next == this.slabSize) {
+                long total = BufferPool.this.allocated.addAndGet(this.slabSize);
+                if (total > BufferPool.this.maxMemory) {
+                    BufferPool.this.allocated.addAndGet(-this.slabSize);
+                    BufferPool.this.unpooled.increment();
+                    return BufferPool.this.allocate(this.bufferSize);
+                }
+                this.slab = BufferPool.this.allocate(this.slabSize);
+                this.next = 0;
+            }
+            this.slab.limit(this.next + this.bufferSize);
+            this.slab.position(this.next);
+            this.next += this.bufferSize;
+            return this.slab.slice();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.gonn.gava;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Byte scans that test 8 bytes at a time: each step loads a little-endian long and finds matching bytes
+ * with carry tricks on the whole word (SWAR, "SIMD within a register"), then finishes the tail a byte at
+ * a time. Ranges are [from, to) of the array, or absolute indexes of the buffer; a buffer's position and
+ * limit are neither used nor changed. Arrays are read directly, the long assembled from 8 bytes with
+ * shifts, so a call on a byte[] allocates nothing. This is plain Java 8; there is no Vector API variant.
+ * Stu.count(String, char) and Stu.getNth scan the chars of a String, not bytes, so they do not use it.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         int lines = ByteSearch.count(buf, 0, n, (byte) '\n');
+ *         int nl = ByteSearch.indexOf(buf, start, n, (byte) '\n');
+ *         boolean ascii = ByteSearch.allInRange(buf, 0, n, 0, 0x7F);
+ * </code></pre>
+ */
+public final class ByteSearch {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+
+    private ByteSearch() {}
+
+    /**
+     * @param b     bytes to search
+     * @param from  first index, inclusive
+     * @param to    last index, exclusive
+     * @param value byte to find
+     * @return index of the first value in [from, to), or -1
+     */
+    public static int indexOf(byte[] b, int from, int to, byte value) {
+        checkRange(b == null ? -1 : b.length, from, to);
+        return swarIndexOf(b, from, to, value);
+    }
+
+    public static int indexOf(ByteBuffer buf, int from, int to, byte value) {
+        checkRange(buf == null ? -1 : buf.limit(), from, to);
+        return swarIndexOf(le(buf), from, to, value);
+    }
+
+    // Index of the first x or y in [from, to), or -1
+    public static int indexOfEither(byte[] b, int from, int to, byte x, byte y) {
+        checkRange(b == null ? -1 : b.length, from, to);
+        return swarIndexOfEither(b, from, to, x, y);
+    }
+
+    public static int indexOfEither(ByteBuffer buf, int from, int to, byte x, byte y) {
+        checkRange(buf == null ? -1 : buf.limit(), from, to);
+        return swarIndexOfEither(le(buf), from, to, x, y);
+    }
+
+    // Occurrences of value in [from, to)
+    public static int count(byte[] b, int from, int to, byte value) {
+        checkRange(b == null ? -1 : b.length, from, to);
+        return swarCount(b, from, to, value);
+    }
+
+    public static int count(ByteBuffer buf, int from, int to, byte value) {
+        checkRange(buf == null ? -1 : buf.limit(), from, to);
+        return swarCount(le(buf), from, to, value);
+    }
+
+    /**
+     * Whether every byte of [from, to), read as 0 to 255, is between lo and hi inclusive.
+     * For instance (0, 0x7F) for ASCII, or ('0', '9') for digits. Ranges within 0 to 0x7F take the fast path.
+     *
+     * @param b    bytes to check
+     * @param from first index, inclusive
+     * @param to   last index, exclusive
+     * @param lo   lowest value allowed, 0 to 255
+     * @param hi   highest value allowed, lo to 255
+     * @return true if all bytes are in range, or the range is empty
+     */
+    public static boolean allInRange(byte[] b, int from, int to, int lo, int hi) {
+        checkRange(b == null ? -1 : b.length, from, to);
+        return swarAllInRange(b, from, to, lo, hi);
+    }
+
+    public static boolean allInRange(ByteBuffer buf, int from, int to, int lo, int hi) {
+        checkRange(buf == null ? -1 : buf.limit(), from, to);
+        return swarAllInRange(le(buf), from, to, lo, hi);
+    }
+
+    // Non-zero where a byte of x is zero; only the lowest flagged byte is exact (borrows may flag bytes above it)
+    private static long zeros(long x) {return (x - ONES) & ~x & HIGHS;}
+
+    // High bit set exactly where a byte of x is zero
+    private static long zerosExact(long x) {return ~(((x & LOWS) + LOWS) | x) & HIGHS;}
+
+    // The byte[] and ByteBuffer versions below are the same loops over a different load
+
+    private static int swarIndexOf(byte[] b, int from, int to, byte value) {
+        final long pattern = (value & 0xFFL) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long z = zeros(getLong(b, i) ^ pattern);
+            if (z != 0) return i + (Long.numberOfTrailingZeros(z) >>> 3);
+        }
+        for (; i < to; i++) {
+            if (b[i] == value) return i;
+        }
+        return -1;
+    }
+
+    private static int swarIndexOf(ByteBuffer d, int from, int to, byte value) {
+        final long pattern = (value & 0xFFL) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long z = zeros(d.getLong(i) ^ pattern);
+            if (z != 0) return i + (Long.numberOfTrailingZeros(z) >>> 3);
+        }
+        for (; i < to; i++) {
+            if (d.get(i) == value) return i;
+        }
+        return -1;
+    }
+
+    private static int swarIndexOfEither(byte[] b, int from, int to, byte x, byte y) {
+        final long px = (x & 0xFFL) * ONES;
+        final long py = (y & 0xFFL) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long w = getLong(b, i);
+            long z = zeros(w ^ px) | zeros(w ^ py);
+            if (z != 0) return i + (Long.numberOfTrailingZeros(z) >>> 3);
+        }
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c == x || c == y) return i;
+        }
+        return -1;
+    }
+
+    private static int swarIndexOfEither(ByteBuffer d, int from, int to, byte x, byte y) {
+        final long px = (x & 0xFFL) * ONES;
+        final long py = (y & 0xFFL) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long w = d.getLong(i);
+            long z = zeros(w ^ px) | zeros(w ^ py);
+            if (z != 0) return i + (Long.numberOfTrailingZeros(z) >>> 3);
+        }
+        for (; i < to; i++) {
+            byte c = d.get(i);
+            if (c == x || c == y) return i;
+        }
+        return -1;
+    }
+
+    private static int swarCount(byte[] b, int from, int to, byte value) {
+        final long pattern = (value & 0xFFL) * ONES;
+        int out = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) out += Long.bitCount(zerosExact(getLong(b, i) ^ pattern));
+        for (; i < to; i++) {
+            if (b[i] == value) out++;
+        }
+        return out;
+    }
+
+    private static int swarCount(ByteBuffer d, int from, int to, byte value) {
+        final long pattern = (value & 0xFFL) * ONES;
+        int out = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) out += Long.bitCount(zerosExact(d.getLong(i) ^ pattern));
+        for (; i < to; i++) {
+            if (d.get(i) == value) out++;
+        }
+        return out;
+    }
+
+    private static boolean swarAllInRange(byte[] b, int from, int to, int lo, int hi) {
+        checkValues(lo, hi);
+        int i = from;
+        if (hi < 0x80) {
+            // Bytes below 0x80 do not carry: w + (0x80 - lo) has its high bit set iff w >= lo,
+            // and w + (0x7F - hi) iff w > hi
+            final long addLo = (0x80 - lo) * ONES;
+            final long addHi = (0x7F - hi) * ONES;
+            for (; i + 8 <= to; i += 8) {
+                long w = getLong(b, i);
+                if ((w & HIGHS) != 0 || ((w + addLo) & HIGHS) != HIGHS || ((w + addHi) & HIGHS) != 0) return false;
+            }
+        }
+        for (; i < to; i++) {
+            int c = b[i] & 0xFF;
+            if (c < lo || c > hi) return false;
+        }
+        return true;
+    }
+
+    private static boolean swarAllInRange(ByteBuffer d, int from, int to, int lo, int hi) {
+        checkValues(lo, hi);
+        int i = from;
+        if (hi < 0x80) {
+            final long addLo = (0x80 - lo) * ONES;
+            final long addHi = (0x7F - hi) * ONES;
+            for (; i + 8 <= to; i += 8) {
+                long w = d.getLong(i);
+                if ((w & HIGHS) != 0 || ((w + addLo) & HIGHS) != HIGHS || ((w + addHi) & HIGHS) != 0) return false;
+            }
+        }
+        for (; i < to; i++) {
+            int c = d.get(i) & 0xFF;
+            if (c < lo || c > hi) return false;
+        }
+        return true;
+    }
+
+    // Little-endian long at b[i, i + 8)
+    static long getLong(byte[] b, int i) {
+        return (b[i] & 0xFFL)
+                | (b[i + 1] & 0xFFL) << 8
+                | (b[i + 2] & 0xFFL) << 16
+                | (b[i + 3] & 0xFFL) << 24
+                | (b[i + 4] & 0xFFL) << 32
+                | (b[i + 5] & 0xFFL) << 40
+                | (b[i + 6] & 0xFFL) << 48
+                | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static ByteBuffer le(ByteBuffer buf) {
+        return buf.order() == ByteOrder.LITTLE_ENDIAN ? buf : buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void checkValues(int lo, int hi) {
+        if (lo < 0 || hi > 0xFF || lo > hi) throw new IllegalArgumentException("Invalid range: " + lo + " to " + hi);
+    }
+
+    private static void checkRange(int length, int from, int to) {
+        if (length < 0) throw new IllegalArgumentException("null input");
+        if (from < 0 || to < from || to > length)
+            throw new IllegalArgumentException("Invalid range: from=" + from + ", to=" + to);
+    }
+}
@@ -0,0 +1,383 @@
+package org.gonn.gava;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader for CSV and other delimited files. Input is read in large blocks into a reusable
+ * buffer and each record is parsed in place: quotes and escapes are removed by moving bytes within the
+ * buffer, so fields are ranges of the buffer and nothing is allocated per record or per field.
+ * <br>
+ * A field may be quoted; a quoted field can hold delimiters and newlines, and a quote inside it is
+ * written twice ("a ""b"" c"). With setEscape(), the escape character takes the next byte literally,
+ * inside or outside quotes. Records end with '\n' (a '\r' before it is dropped); blank lines are skipped.
+ * <br>
+ * The Record handed to the consumer is reused for every record. Use one reader per thread.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         DelimitedReader reader = DelimitedReader.newInstance(',');
+ *         reader.readFile(path, r -&gt; {
+ *             if (r.getNumber() == 1) return; // header
+ *             long cents = r.getDecimal(3, 2, 0);
+ *             if (r.equals(1, "CA")) total += cents;
+ *         });
+ * </code></pre>
+ */
+public class DelimitedReader {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024; // grows for longer records
+    private static final int NONE = 0x100; // never equal to a byte
+
+    private final byte delim;
+    private int quote = '"';
+    private int escape = NONE;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    public DelimitedReader(char delim) {
+        if (delim > 0x7F || delim == '\n' || delim == '\r') throw new IllegalArgumentException("Invalid delimiter");
+        this.delim = (byte) delim;
+    }
+
+    public static DelimitedReader newInstance(char delim) {return new DelimitedReader(delim);}
+
+    // Quote character; '"' by default
+    public DelimitedReader setQuote(char quote) {
+        this.quote = checkChar(quote);
+        return this;
+    }
+
+    // No quoting: quote characters are kept as data
+    public DelimitedReader setNoQuote() {
+        this.quote = NONE;
+        return this;
+    }
+
+    // Escape character, such as '\\'; none by default
+    public DelimitedReader setEscape(char escape) {
+        this.escape = checkChar(escape);
+        return this;
+    }
+
+    public DelimitedReader setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be > 0");
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    private int checkChar(char c) {
+        if (c > 0x7F || c == '\n' || c == '\r' || c == (char) this.delim)
+            throw new IllegalArgumentException("Invalid character: " + (int) c);
+        return c;
+    }
+
+    /**
+     * @param in       input
+     * @param consumer how to process each record
+     * @return number of records
+     * @throws IOException any IO issues
+     */
+    public long readInputStream(InputStream in, Consumer<Record> consumer) throws IOException {
+        if (in == null || consumer == null) throw new IllegalArgumentException("null input");
+        return this.read(in::read, consumer);
+    }
+
+    public long readChannel(ReadableByteChannel channel, Consumer<Record> consumer) throws IOException {
+        if (channel == null || consumer == null) throw new IllegalArgumentException("null input");
+        return this.read((b, off, len) -> channel.read(ByteBuffer.wrap(b, off, len)), consumer);
+    }
+
+    public long readFile(Path path, Consumer<Record> consumer) throws IOException {
+        if (path == null || consumer == null) throw new IllegalArgumentException("null input");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return this.readChannel(channel, consumer);
+        }
+    }
+
+    private interface Source {
+        int read(byte[] b, int off, int len) throws IOException;
+    }
+
+    private long read(Source source, Consumer<Record> consumer) throws IOException {
+        Record record = new Record();
+        byte[] buf = new byte[this.bufferSize];
+        int start = 0;   // start of the current record
+        int scanned = 0; // end of the current record is searched from here
+        int end = 0;     // bytes in buf
+        boolean inQuote = false;
+        boolean fieldStart = true; // the scan is at the start of a field; only used with an escape
+        boolean eof = false;
+
+        while (true) {
+            // Find the end of the record, outside of quotes. Quotes follow the rules of parse(): a quote
+            // opens a quoted field only at the start of a field, and a doubled quote inside one is data.
+            int nl = -1;
+            int i = scanned;
+            if (this.escape == NONE) { // jump between quotes and newlines, 8 bytes at a time
+                while (i < end) {
+                    if (inQuote) {
+                        int j = ByteSearch.indexOf(buf, i, end, (byte) this.quote);
+                        if (j < 0) {
+                            i = end;
+                            break;
+                        }
+                        if (j + 1 == end && !eof) { // need the next byte to tell a doubled quote
+                            i = j;
+                            break;
+                        }
+                        if (j + 1 < end && buf[j + 1] == this.quote) {
+                            i = j + 2;
+                        } else {
+                            inQuote = false;
+                            i = j + 1;
+                        }
+                        continue;
+                    }
+                    int j = this.quote == NONE ? ByteSearch.indexOf(buf, i, end, (byte) '\n')
+                            : ByteSearch.indexOfEither(buf, i, end, (byte) this.quote, (byte) '\n');
+                    if (j < 0) {
+                        i = end;
+                        break;
+                    }
+                    if (buf[j] == '\n') {
+                        nl = i = j;
+                        break;
+                    }
+                    inQuote = j == start || buf[j - 1] == this.delim; // without escapes, any delimiter is one
+                    i = j + 1;
+                }
+            } else {
+                while (i < end) {
+                    byte c = buf[i];
+                    if (c == this.escape) {
+                        if (i + 1 < end) {
+                            i += 2;
+                            fieldStart = false;
+                            continue;
+                        }
+                        if (!eof) break; // need the escaped byte
+                    }
+                    if (inQuote) {
+                        if (c == this.quote) {
+                            if (i + 1 == end && !eof) break; // need the next byte to tell a doubled quote
+                            if (i + 1 < end && buf[i + 1] == this.quote) {
+                                i += 2;
+                                continue;
+                            }
+                            inQuote = false;
+                        }
+                    } else if (c == '\n') {
+                        nl = i;
+                        break;
+                    } else if (c == this.quote && fieldStart) {
+                        inQuote = true;
+                    }
+                    fieldStart = c == this.delim && !inQuote;
+                    i++;
+                }
+            }
+            scanned = i;
+
+            if (nl < 0 && !eof) {
+                // Refill, keeping the partial record
+                if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    scanned -= start;
+                    end -= start;
+                    start = 0;
+                } else if (end == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int n = source.read(buf, end, buf.length - end);
+                if (n < 0) eof = true;
+                else end += n;
+                continue;
+            }
+
+            int stop = nl < 0 ? end : nl;
+            if (stop > start && buf[stop - 1] == '\r') stop--;
+            if (stop > start) {
+                this.parse(record, buf, start, stop);
+                consumer.accept(record);
+            }
+            if (nl < 0) break; // eof
+            start = nl + 1;
+            scanned = start;
+            inQuote = false;
+            fieldStart = true;
+        }
+        return record.number;
+    }
+
+    // Splits b[start, stop) into fields, removing quotes and escapes in place
+    private void parse(Record r, byte[] b, int start, int stop) {
+        r.data = b;
+        r.count = 0;
+        r.number++;
+        final byte d = this.delim;
+        final int q = this.quote;
+        final int esc = this.escape;
+        int i = start;
+        while (true) {
+            int from = i;
+            int w = i; // where unquoted/unescaped bytes are written
+            boolean quoted = q != NONE && i < stop && b[i] == q;
+            if (quoted) {
+                from = ++i;
+                w = i;
+                while (i < stop) {
+                    byte c = b[i];
+                    if (c == esc && i + 1 < stop) {
+                        b[w++] = b[i + 1];
+                        i += 2;
+                    } else if (c == q) {
+                        if (i + 1 < stop && b[i + 1] == q) { // doubled quote
+                            b[w++] = (byte) q;
+                            i += 2;
+                        } else {
+                            i++; // closing quote
+                            break;
+                        }
+                    } else {
+                        b[w++] = b[i++];
+                    }
+                }
+            }
+            // Unquoted field, or anything after a closing quote, up to the delimiter
+            if (esc == NONE && !quoted) {
+                int j = ByteSearch.indexOf(b, i, stop, d);
+                i = j < 0 ? stop : j;
+                w = i;
+            } else {
+                while (i < stop && b[i] != d) {
+                    if (b[i] == esc && i + 1 < stop) {
+                        b[w++] = b[i + 1];
+                        i += 2;
+                    } else {
+                        b[w++] = b[i++];
+                    }
+                }
+            }
+            r.add(from, w);
+            if (i >= stop) break;
+            i++; // delimiter
+        }
+    }
+
+    /**
+     * One record as ranges of the reader's buffer. Only valid within the consumer call.
+     * Negative indexes count from the end.
+     */
+    public static final class Record {
+        private byte[] data;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int count = 0;
+        private long number = 0;
+
+        private void add(int start, int end) {
+            if (this.count == this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, this.count * 2);
+                this.ends = Arrays.copyOf(this.ends, this.count * 2);
+            }
+            this.starts[this.count] = start;
+            this.ends[this.count++] = end;
+        }
+
+        // Record number, starting with 1
+        public long getNumber() {return this.number;}
+
+        public int size() {return this.count;}
+
+        public byte[] array() {return this.data;}
+
+        public int start(int i) {return this.starts[this.checked(i)];}
+
+        public int length(int i) {
+            int n = this.checked(i);
+            return this.ends[n] - this.starts[n];
+        }
+
+        // Decodes as UTF-8; returns null if there is no field i
+        public String get(int i) {
+            int n = this.index(i);
+            if (n < 0) return null;
+            return new String(this.data, this.starts[n], this.ends[n] - this.starts[n], StandardCharsets.UTF_8);
+        }
+
+        // Decodes with the cache's charset, so repeated values share one String
+        public String get(int i, InternCache cache) {
+            if (cache == null) return this.get(i);
+            int n = this.index(i);
+            if (n < 0) return null;
+            return cache.get(this.data, this.starts[n], this.ends[n] - this.starts[n]);
+        }
+
+        public boolean equals(int i, CharSequence value) {
+            int n = this.index(i);
+            if (n < 0 || value == null) return false;
+            int s = this.starts[n];
+            int len = this.ends[n] - s;
+            if (len != value.length()) return false;
+            for (int k = 0; k < len; k++) {
+                if ((this.data[s + k] & 0xFF) != value.charAt(k)) return false;
+            }
+            return true;
+        }
+
+        public boolean isEmpty(int i) {
+            int n = this.index(i);
+            return n < 0 || this.ends[n] == this.starts[n];
+        }
+
+        // Parses field i in place; see Stu.parseInt(byte[], int, int, int). Returns fallback if there is no field i.
+        public int getInt(int i, int fallback) {
+            return (int) this.parse(i, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, fallback);
+        }
+
+        public long getLong(int i, long fallback) {
+            return this.parse(i, 0, Long.MIN_VALUE, Long.MAX_VALUE, fallback);
+        }
+
+        // Unscaled value of a decimal field; see Stu.parseDecimal(byte[], int, int, int, long)
+        public long getDecimal(int i, int scale, long fallback) {
+            if (scale < 0 || scale > 18) throw new IllegalArgumentException("scale must be between 0 and 18");
+            return this.parse(i, scale, Long.MIN_VALUE, Long.MAX_VALUE, fallback);
+        }
+
+        // Copies all fields out of the shared buffer
+        public String[] toArray() {
+            String[] out = new String[this.count];
+            for (int i = 0; i < this.count; i++) out[i] = this.get(i);
+            return out;
+        }
+
+        @Override
+        public String toString() {return Arrays.toString(this.toArray());}
+
+        private long parse(int i, int scale, long min, long max, long fallback) {
+            int n = this.index(i);
+            if (n < 0) return fallback;
+            int s = this.starts[n];
+            return Stu.parseNumber(this.data, s, this.ends[n] - s, scale, min, max, fallback, false);
+        }
+
+        private int index(int i) {
+            int n = i < 0 ? i + this.count : i;
+            return (n < 0 || n >= this.count) ? -1 : n;
+        }
+
+        private int checked(int i) {
+            int n = this.index(i);
+            if (n < 0) throw new IllegalArgumentException("Invalid index: " + i);
+            return n;
+        }
+    }
+}
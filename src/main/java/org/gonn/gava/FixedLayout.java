@@ -0,0 +1,371 @@
+package org.gonn.gava;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named field layout for FixedRecord. Each field knows its offset, width and type, and reads or writes
+ * the record bytes directly, so no intermediate String is created for numeric or date fields.
+ * This is only for US ASCII values.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         FixedLayout layout = FixedLayout.newInstance()
+ *                 .addText("id", 0, 5)
+ *                 .addText("name", 5, 13)
+ *                 .addInt("age", 18, 2);
+ *         FixedLayout.IntField age = layout.getInt("age");
+ *
+ *         FixedRecord.readInputStream(in, layout.getWidth(), r -&gt; total += age.get(r));
+ * </code></pre>
+ */
+public class FixedLayout {
+    private final Map<String, Field> fields = new LinkedHashMap<>();
+    private int width = 0;
+
+    public FixedLayout() {}
+
+    public static FixedLayout newInstance() {return new FixedLayout();}
+
+    public FixedLayout add(Field field) {
+        if (field == null) throw new IllegalArgumentException("field cannot be null");
+        if (this.fields.containsKey(field.getName()))
+            throw new IllegalArgumentException("duplicate field: " + field.getName());
+        this.fields.put(field.getName(), field);
+        this.width = Math.max(this.width, field.getOffset() + field.getWidth());
+        return this;
+    }
+
+    public FixedLayout addInt(String name, int offset, int width) {
+        return this.add(new IntField(name, offset, width));
+    }
+
+    public FixedLayout addLong(String name, int offset, int width) {
+        return this.add(new LongField(name, offset, width));
+    }
+
+    public FixedLayout addDecimal(String name, int offset, int width, int scale) {
+        return this.add(new DecimalField(name, offset, width, scale));
+    }
+
+    public FixedLayout addText(String name, int offset, int width) {
+        return this.add(new TextField(name, offset, width));
+    }
+
+    public FixedLayout addDate(String name, int offset) {
+        return this.add(new DateField(name, offset));
+    }
+
+    public Field get(String name) {
+        Field f = this.fields.get(name);
+        if (f == null) throw new IllegalArgumentException("unknown field: " + name);
+        return f;
+    }
+
+    public IntField getInt(String name) {return this.get(name, IntField.class);}
+
+    public LongField getLong(String name) {return this.get(name, LongField.class);}
+
+    public DecimalField getDecimal(String name) {return this.get(name, DecimalField.class);}
+
+    public TextField getText(String name) {return this.get(name, TextField.class);}
+
+    public DateField getDate(String name) {return this.get(name, DateField.class);}
+
+    private <F extends Field> F get(String name, Class<F> type) {
+        Field f = this.get(name);
+        if (!type.isInstance(f)) throw new IllegalArgumentException(name + " is not " + type.getSimpleName());
+        return type.cast(f);
+    }
+
+    public Collection<Field> getFields() {return Collections.unmodifiableCollection(this.fields.values());}
+
+    // Minimum record width covering all fields
+    public int getWidth() {return this.width;}
+
+    public FixedRecord newRecord() {
+        if (this.width == 0) throw new IllegalStateException("layout has no fields");
+        return new FixedRecord(this.width);
+    }
+
+    // ================================================================================
+    // Fields
+    // ================================================================================
+
+    public abstract static class Field {
+        private final String name;
+        private final int offset;
+        private final int width;
+
+        protected Field(String name, int offset, int width) {
+            if (name == null || name.isEmpty()) throw new IllegalArgumentException("name cannot be null/empty");
+            if (offset < 0 || width <= 0) {
+                throw new IllegalArgumentException("Invalid range: offset=" + offset + ", width=" + width);
+            }
+            this.name = name;
+            this.offset = offset;
+            this.width = width;
+        }
+
+        public String getName() {return this.name;}
+
+        public int getOffset() {return this.offset;}
+
+        public int getWidth() {return this.width;}
+
+        // Field value as it appears in the record
+        public String getRaw(FixedRecord r) {
+            return new String(this.bytes(r), this.start(r), this.width, StandardCharsets.US_ASCII);
+        }
+
+        byte[] bytes(FixedRecord r) {
+            if (this.offset + this.width > r.length()) {
+                throw new IllegalArgumentException("field " + this.name + " is outside of the record");
+            }
+            return r.array();
+        }
+
+        // Position of this field in the record's underlying array
+        int start(FixedRecord r) {return r.offset() + this.offset;}
+
+        @Override
+        public String toString() {
+            return this.getClass().getSimpleName() + "(" + this.name + ", " + this.offset + ", " + this.width + ")";
+        }
+    }
+
+    /**
+     * Signed integer, surrounding spaces are ignored. Written right-aligned with leading zeros.
+     */
+    public static class IntField extends Field {
+        public IntField(String name, int offset, int width) {super(name, offset, width);}
+
+        public int get(FixedRecord r) throws NumberFormatException {
+            long v = parseLong(this.bytes(r), this.start(r), this.getWidth(), 0, true);
+            if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw new NumberFormatException("int overflow");
+            return (int) v;
+        }
+
+        public int get(FixedRecord r, int fallback) {
+            long v = parseLong(this.bytes(r), this.start(r), this.getWidth(), fallback, false);
+            return (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) ? fallback : (int) v;
+        }
+
+        public void set(FixedRecord r, int value) {
+            writeLong(this.bytes(r), this.start(r), this.getWidth(), value);
+        }
+    }
+
+    /**
+     * Signed long, surrounding spaces are ignored. Written right-aligned with leading zeros.
+     */
+    public static class LongField extends Field {
+        public LongField(String name, int offset, int width) {super(name, offset, width);}
+
+        public long get(FixedRecord r) throws NumberFormatException {
+            return parseLong(this.bytes(r), this.start(r), this.getWidth(), 0, true);
+        }
+
+        public long get(FixedRecord r, long fallback) {
+            return parseLong(this.bytes(r), this.start(r), this.getWidth(), fallback, false);
+        }
+
+        public void set(FixedRecord r, long value) {
+            writeLong(this.bytes(r), this.start(r), this.getWidth(), value);
+        }
+    }
+
+    /**
+     * Fixed-point decimal with an implied decimal point: "0001234" with scale 2 is 12.34.
+     * An explicit point is also accepted when reading ("12.34" or "12.3"). Values are exchanged
+     * as unscaled longs (1234 for 12.34) to avoid allocation.
+     */
+    public static class DecimalField extends Field {
+        private final int scale;
+        private final long factor;
+
+        public DecimalField(String name, int offset, int width, int scale) {
+            super(name, offset, width);
+            if (scale < 0 || scale > 18) throw new IllegalArgumentException("scale must be 0..18");
+            this.scale = scale;
+            long f = 1;
+            for (int i = 0; i < scale; i++) f *= 10;
+            this.factor = f;
+        }
+
+        public int getScale() {return this.scale;}
+
+        public long getUnscaled(FixedRecord r) throws NumberFormatException {
+            return parseDecimal(this.bytes(r), this.start(r), this.getWidth(), this.scale, 0, true);
+        }
+
+        public long getUnscaled(FixedRecord r, long fallback) {
+            return parseDecimal(this.bytes(r), this.start(r), this.getWidth(), this.scale, fallback, false);
+        }
+
+        public double getDouble(FixedRecord r) throws NumberFormatException {
+            return (double) this.getUnscaled(r) / this.factor;
+        }
+
+        public void setUnscaled(FixedRecord r, long unscaled) {
+            writeLong(this.bytes(r), this.start(r), this.getWidth(), unscaled);
+        }
+    }
+
+    /**
+     * Text with leading and trailing spaces trimmed. Written left-aligned, padded with spaces.
+     */
+    public static class TextField extends Field {
+        public TextField(String name, int offset, int width) {super(name, offset, width);}
+
+        public String get(FixedRecord r) {
+            byte[] b = this.bytes(r);
+            int start = this.start(r);
+            int end = start + this.getWidth();
+            while (start < end && b[start] == ' ') start++;
+            while (end > start && b[end - 1] == ' ') end--;
+            return start == end ? "" : new String(b, start, end - start, StandardCharsets.US_ASCII);
+        }
+
+        // Trimmed value through the cache, so repeated values share one String
+        public String get(FixedRecord r, InternCache cache) {
+            if (cache == null) return this.get(r);
+            byte[] b = this.bytes(r);
+            int start = this.start(r);
+            int end = start + this.getWidth();
+            while (start < end && b[start] == ' ') start++;
+            while (end > start && b[end - 1] == ' ') end--;
+            return cache.get(b, start, end - start);
+        }
+
+        // Compares the trimmed value without creating a String
+        public boolean equals(FixedRecord r, CharSequence s) {
+            if (s == null) return false;
+            byte[] b = this.bytes(r);
+            int start = this.start(r);
+            int end = start + this.getWidth();
+            while (start < end && b[start] == ' ') start++;
+            while (end > start && b[end - 1] == ' ') end--;
+            if (end - start != s.length()) return false;
+            for (int i = start; i < end; i++) {
+                if (b[i] != (byte) s.charAt(i - start)) return false;
+            }
+            return true;
+        }
+
+        public void set(FixedRecord r, CharSequence s) {
+            byte[] b = this.bytes(r);
+            int offset = this.start(r);
+            int width = this.getWidth();
+            int sLen = s == null ? 0 : Math.min(s.length(), width);
+            for (int i = 0; i < sLen; i++) b[offset + i] = (byte) s.charAt(i);
+            for (int i = sLen; i < width; i++) b[offset + i] = ' ';
+        }
+    }
+
+    /**
+     * Date in yyyyMMdd format. Values are exchanged as epoch days (days since 1970-01-01).
+     */
+    public static class DateField extends Field {
+        public DateField(String name, int offset) {super(name, offset, 8);}
+
+        public long getEpochDay(FixedRecord r) throws NumberFormatException {
+            byte[] b = this.bytes(r);
+            int off = this.start(r);
+            int y = digits(b, off, 4);
+            int m = digits(b, off + 4, 2);
+            int d = digits(b, off + 6, 2);
+            if (y < 0 || m < 1 || m > 12 || d < 1 || d > lengthOfMonth(y, m)) {
+                throw new NumberFormatException("invalid date: " + this.getRaw(r));
+            }
+            return daysFromCivil(y, m, d);
+        }
+
+        public LocalDate get(FixedRecord r) throws NumberFormatException {
+            return LocalDate.ofEpochDay(this.getEpochDay(r));
+        }
+
+        public void setEpochDay(FixedRecord r, long epochDay) {
+            byte[] b = this.bytes(r);
+            int off = this.start(r);
+            // civil from days (proleptic Gregorian)
+            long z = epochDay + 719468;
+            long era = (z >= 0 ? z : z - 146096) / 146097;
+            long doe = z - era * 146097;
+            long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+            long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+            long mp = (5 * doy + 2) / 153;
+            long d = doy - (153 * mp + 2) / 5 + 1;
+            long m = mp < 10 ? mp + 3 : mp - 9;
+            long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+            if (y < 0 || y > 9999) throw new IllegalArgumentException("year out of range: " + y);
+            writeLong(b, off, 4, y);
+            writeLong(b, off + 4, 2, m);
+            writeLong(b, off + 6, 2, d);
+        }
+
+        public void set(FixedRecord r, LocalDate date) {
+            this.setEpochDay(r, date.toEpochDay());
+        }
+
+        // Returns -1 if not all digits
+        private static int digits(byte[] b, int off, int len) {
+            int out = 0;
+            for (int i = off; i < off + len; i++) {
+                int c = b[i] - '0';
+                if (c < 0 || c > 9) return -1;
+                out = out * 10 + c;
+            }
+            return out;
+        }
+
+        private static int lengthOfMonth(int y, int m) {
+            if (m == 2) return (y % 4 == 0 && (y % 100 != 0 || y % 400 == 0)) ? 29 : 28;
+            return (m == 4 || m == 6 || m == 9 || m == 11) ? 30 : 31;
+        }
+
+        private static long daysFromCivil(long y, long m, long d) {
+            y -= m <= 2 ? 1 : 0;
+            long era = (y >= 0 ? y : y - 399) / 400;
+            long yoe = y - era * 400;
+            long doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + d - 1;
+            long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+            return era * 146097 + doe - 719468;
+        }
+    }
+
+    // ================================================================================
+    // Byte level parse/write
+    // ================================================================================
+
+    // Parses a signed long; surrounding spaces are ignored. When strict is false,
+    // fallback is returned instead of throwing so that bad fields cost no stack trace.
+    static long parseLong(byte[] b, int off, int len, long fallback, boolean strict) {
+        return parseDecimal(b, off, len, 0, fallback, strict);
+    }
+
+    static long parseDecimal(byte[] b, int off, int len, int scale, long fallback, boolean strict) {
+        return Stu.parseNumber(b, off, len, scale, Long.MIN_VALUE, Long.MAX_VALUE, fallback, strict);
+    }
+
+    // Writes right-aligned with leading zeros; a negative sign takes the first position.
+    // A value that does not fit leaves the field unchanged.
+    static void writeLong(byte[] b, int off, int width, long value) {
+        boolean neg = value < 0;
+        if (Stu.getDigits(value) + (neg ? 1 : 0) > width)
+            throw new IllegalArgumentException("value does not fit in " + width + ": " + value);
+        int stop = neg ? off + 1 : off;
+        int i = off + width - 1;
+        long v = value;
+        do {
+            b[i--] = (byte) ('0' + Math.abs(v % 10));
+            v /= 10;
+        } while (v != 0);
+        while (i >= stop) b[i--] = '0';
+        if (neg) b[off] = '-';
+    }
+}
@@ -1,14 +1,38 @@
 package org.gonn.gava;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * This is only for US ASCII values.
  * This is not thread-safe.
+ * A record either owns its data or is a view (see newView() and wrap()) over a shared buffer.
  * <br>
  * Example of a static method FixedRecord.readInputStream():
  * <pre><code>
@@ -31,13 +55,18 @@ import java.util.function.Consumer;
  * </code></pre>
  */
 public class FixedRecord {
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024; // bytes mapped at a time by readFile()
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024; // default buffer for readInputStream()
+
     private final byte padByte; // default value
-    private final byte[] data;
+    private final int size;
+    private final boolean view;
+    private byte[] data;
+    private int offset; // where this record starts in data; non-zero only for a view
 
     public FixedRecord(int size, byte padByte) {
-        if (size <= 0) throw new IllegalArgumentException();
-        this.data = new byte[size];
-        this.padByte = padByte;
+        this(size, padByte, new byte[checkSize(size)], 0);
         this.reset();
     }
 
@@ -45,13 +74,86 @@ public class FixedRecord {
         this(size, (byte) ' ');
     }
 
+    private FixedRecord(int size, byte padByte, byte[] data, int offset) {
+        this.size = checkSize(size);
+        this.padByte = padByte;
+        this.view = data == null;
+        this.data = data;
+        this.offset = offset;
+    }
+
+    // Checked before the storage is allocated, so a bad size is an IllegalArgumentException
+    private static int checkSize(int size) {
+        if (size <= 0) throw new IllegalArgumentException();
+        return size;
+    }
+
+    /**
+     * Creates a view record: it has no storage of its own and has to be pointed at a shared buffer
+     * with wrap() before use. Reading a view costs no copy; writing to it writes into the shared buffer.
+     * Use materialize() or copyTo() to keep a stable copy.
+     *
+     * @param size record width
+     * @return an unwrapped view record
+     */
+    public static FixedRecord newView(int size) {
+        return new FixedRecord(size, (byte) ' ', null, 0);
+    }
+
+    /**
+     * Points this record at buffer[offset, offset + length()) without copying.
+     * The record becomes a view of the buffer.
+     *
+     * @param buffer shared buffer
+     * @param offset where the record starts in the buffer
+     * @return this record
+     */
+    public FixedRecord wrap(byte[] buffer, int offset) {
+        if (!this.view) throw new IllegalStateException("not a view; use newView()");
+        if (buffer == null) throw new IllegalArgumentException("null buffer");
+        if (offset < 0 || offset + this.size > buffer.length)
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + this.size);
+        this.data = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Same as wrap(byte[], int) for an array-backed ByteBuffer. The position is relative to the
+     * ByteBuffer, not to its backing array.
+     *
+     * @param buffer   array-backed buffer
+     * @param position where the record starts in the buffer
+     * @return this record
+     */
+    public FixedRecord wrap(ByteBuffer buffer, int position) {
+        if (buffer == null) throw new IllegalArgumentException("null buffer");
+        if (!buffer.hasArray()) throw new IllegalArgumentException("buffer is not array-backed");
+        if (position < 0 || position + this.size > buffer.limit())
+            throw new IllegalArgumentException("Invalid range: position=" + position + ", length=" + this.size);
+        return this.wrap(buffer.array(), buffer.arrayOffset() + position);
+    }
+
+    /**
+     * Returns a new standalone record with a copy of the current data.
+     * Use this to keep a record handed out by a reader, as the reader reuses the same instance.
+     *
+     * @return a new record with its own storage
+     */
+    public FixedRecord materialize() {
+        this.checkData();
+        FixedRecord out = new FixedRecord(this.size, this.padByte, new byte[this.size], 0);
+        System.arraycopy(this.data, this.offset, out.data, 0, this.size);
+        return out;
+    }
+
     public void reset(int start, int end) {
         this.checkRange(start, end - start);
-        Arrays.fill(this.data, start, end, this.padByte);
+        Arrays.fill(this.data, this.offset + start, this.offset + end, this.padByte);
     }
 
     public void reset() {
-        this.reset(0, this.data.length);
+        this.reset(0, this.size);
     }
 
     public void set(String s, int start, int length, byte padByte) {
@@ -68,7 +170,7 @@ public class FixedRecord {
     }
 
     public void set(String line) {
-        this.set(line, 0, this.data.length, this.padByte);
+        this.set(line, 0, this.size, this.padByte);
     }
 
     public void set(byte[] s, int start, int length, byte padByte) {
@@ -76,9 +178,9 @@ public class FixedRecord {
         this.checkRange(start, length);
 
         int sLen = Math.min(s.length, length);
-        if (sLen > 0) System.arraycopy(s, 0, this.data, start, sLen);
+        if (sLen > 0) System.arraycopy(s, 0, this.data, this.offset + start, sLen);
         if (sLen < length) {
-            Arrays.fill(this.data, sLen + start, length + start, padByte);
+            Arrays.fill(this.data, this.offset + sLen + start, this.offset + length + start, padByte);
         }
     }
 
@@ -87,8 +189,8 @@ public class FixedRecord {
     }
 
     public void set(byte b, int index) {
-        if (index < 0 || index >= this.data.length) throw new IllegalArgumentException("Invalid index");
-        this.data[index] = b;
+        this.checkIndex(index);
+        this.data[this.offset + index] = b;
     }
 
     public void set(char c, int index) {
@@ -97,12 +199,25 @@ public class FixedRecord {
 
     public String get(int start, int length) {
         this.checkRange(start, length);
-        return new String(this.data, start, length, StandardCharsets.US_ASCII);
+        return new String(this.data, this.offset + start, length, StandardCharsets.US_ASCII);
+    }
+
+    // Same as get(start, length), but repeated values come back as the cached String
+    public String get(int start, int length, InternCache cache) {
+        if (cache == null) return this.get(start, length);
+        this.checkRange(start, length);
+        return cache.get(this.data, this.offset + start, length);
+    }
+
+    // Hash64 of bytes [start, start + length), without making a String
+    public long hash(int start, int length) {
+        this.checkRange(start, length);
+        return Hash64.hash(this.data, this.offset + start, length);
     }
 
     public byte get(int index) {
-        if (index < 0 || index >= this.data.length) throw new IllegalArgumentException("Invalid index");
-        return this.data[index];
+        this.checkIndex(index);
+        return this.data[this.offset + index];
     }
 
     /**
@@ -111,32 +226,58 @@ public class FixedRecord {
      * @return a copy of current underlying byte array
      */
     public byte[] getBytes() {
-        return this.data.clone();
+        this.checkData();
+        return Arrays.copyOfRange(this.data, this.offset, this.offset + this.size);
+    }
+
+    public int length() {return this.size;}
+
+    public boolean isView() {return this.view;}
+
+    // Underlying byte array and the record's position in it, without a copy; used by FixedLayout accessors.
+    byte[] array() {
+        this.checkData();
+        return this.data;
     }
 
+    int offset() {return this.offset;}
+
     public boolean copyTo(FixedRecord target) {
-        if (target == null || this.data.length != target.data.length) return false;
-        System.arraycopy(this.data, 0, target.data, 0, target.data.length);
+        if (target == null || this.size != target.size) return false;
+        this.checkData();
+        target.checkData();
+        System.arraycopy(this.data, this.offset, target.data, target.offset, this.size);
         return true;
     }
 
     public boolean copyFrom(FixedRecord source) {
-        if (source == null || this.data.length != source.data.length) return false;
-        System.arraycopy(source.data, 0, this.data, 0, this.data.length);
-        return true;
+        return source != null && source.copyTo(this);
     }
 
     @Override
     public String toString() {
-        return new String(this.data, StandardCharsets.US_ASCII);
+        this.checkData();
+        return new String(this.data, this.offset, this.size, StandardCharsets.US_ASCII);
     }
 
     private void checkRange(int start, int length) {
-        if (start < 0 || length < 0 || start + length > this.data.length)
+        this.checkData();
+        if (start < 0 || length < 0 || start + length > this.size)
             throw new IllegalArgumentException("Invalid range: start=" + start + ", length=" + length);
     }
 
+    private void checkIndex(int index) {
+        this.checkData();
+        if (index < 0 || index >= this.size) throw new IllegalArgumentException("Invalid index");
+    }
+
+    private void checkData() {
+        if (this.data == null) throw new IllegalStateException("view is not wrapped");
+    }
+
     /**
+     * The record handed to the consumer is a view over the buffer and is reused for every record,
+     * so no copy is made; call materialize() on it to keep a record.
      * Note: partial data will be ignored.
      *
      * @param in          inputStream
@@ -148,53 +289,341 @@ public class FixedRecord {
      */
     public static int readInputStream(InputStream in, int recordWidth, Consumer<FixedRecord> consumer, byte[] buffer)
             throws IOException {
+        if (buffer == null) throw new IllegalArgumentException("null buffer");
+        return readInputStream(in, recordWidth, consumer, buffer, 0, buffer.length);
+    }
+
+    /**
+     * Same as readInputStream(InputStream, int, Consumer, byte[]), using the array-backed buffer from
+     * its position to its limit, such as a heap buffer from a BufferPool.
+     *
+     * @param in          inputStream
+     * @param recordWidth width per record
+     * @param consumer    how to process the fixed record
+     * @param buffer      array-backed buffer to use
+     * @return total records read
+     * @throws IOException any IO issues
+     */
+    public static int readInputStream(InputStream in, int recordWidth, Consumer<FixedRecord> consumer,
+                                      ByteBuffer buffer) throws IOException {
+        if (buffer == null) throw new IllegalArgumentException("null buffer");
+        if (!buffer.hasArray()) throw new IllegalArgumentException("buffer is not array-backed");
+        int start = buffer.arrayOffset() + buffer.position();
+        return readInputStream(in, recordWidth, consumer, buffer.array(), start, start + buffer.remaining());
+    }
+
+    // Reads through buffer[start, end)
+    private static int readInputStream(InputStream in, int recordWidth, Consumer<FixedRecord> consumer,
+                                       byte[] buffer, int start, int end) throws IOException {
         if (in == null || consumer == null) throw new IllegalArgumentException("null input");
         if (recordWidth <= 0) throw new IllegalArgumentException("recordWidth must be > 0");
-        if (buffer == null) throw new IllegalArgumentException("null buffer");
-        if (buffer.length < recordWidth) throw new IllegalArgumentException("buffer must be >= recordWidth");
+        if (end - start < recordWidth) throw new IllegalArgumentException("buffer must be >= recordWidth");
 
-        FixedRecord record = new FixedRecord(recordWidth);
+        FixedRecord record = newView(recordWidth);
         int totalRecords = 0;
-        int bufferPos = 0;
-        int bytesInBuffer = 0;
+        int bufferPos = start;
+        int bytesInBuffer = start;
 
         while (true) {
-            record.reset();
             // Shift remaining partial record to front if needed for refill
-            if (bytesInBuffer - bufferPos < recordWidth && bufferPos > 0) {
+            if (bytesInBuffer - bufferPos < recordWidth && bufferPos > start) {
                 int remaining = bytesInBuffer - bufferPos;
                 if (remaining > 0) {
-                    System.arraycopy(buffer, bufferPos, buffer, 0, remaining);
+                    System.arraycopy(buffer, bufferPos, buffer, start, remaining);
                 }
-                bufferPos = 0;
-                bytesInBuffer = remaining;
+                bufferPos = start;
+                bytesInBuffer = start + remaining;
             }
 
-            // Refill buffer if we don't have a full record
-            if (bytesInBuffer - bufferPos < recordWidth) {
-                int bytesRead = in.read(buffer, bytesInBuffer, buffer.length - bytesInBuffer);
-                if (bytesRead == -1) break;  // EOF
+            // Refill until a full record is buffered; pipes and decompressing streams return short reads
+            while (bytesInBuffer - bufferPos < recordWidth) {
+                int bytesRead = in.read(buffer, bytesInBuffer, end - bytesInBuffer);
+                if (bytesRead == -1) return totalRecords;  // EOF; a partial record is ignored
                 bytesInBuffer += bytesRead;
-                if (bytesInBuffer - bufferPos < recordWidth) break;  // EOF with partial record
             }
 
-            // Process full record
-            System.arraycopy(buffer, bufferPos, record.data, 0, recordWidth);
-            consumer.accept(record);
+            // Process full record in place
+            consumer.accept(record.wrap(buffer, bufferPos));
             bufferPos += recordWidth;
             totalRecords++;
         }
-        return totalRecords;
     }
 
     public static int readInputStream(InputStream in, int recordWidth, Consumer<FixedRecord> consumer)
             throws IOException {
-        return readInputStream(in, recordWidth, consumer, new byte[recordWidth]);
+        int size = Math.max(recordWidth, DEFAULT_BUFFER_SIZE / recordWidth * recordWidth);
+        return readInputStream(in, recordWidth, consumer, new byte[size]);
+    }
+
+    /**
+     * Same as readInputStream(), but a background thread reads ahead into rotating buffers while the
+     * consumer works on the current one, so reading and processing overlap. Every buffer holds whole
+     * records, and the record handed to the consumer is a view over it (see materialize()).
+     * Note: partial data will be ignored.
+     *
+     * @param in          inputStream; only read by the background thread
+     * @param recordWidth width per record
+     * @param consumer    how to process the fixed record; called on the caller's thread
+     * @param bufferSize  bytes per buffer (rounded down to a multiple of recordWidth)
+     * @param bufferCount number of rotating buffers, at least 2
+     * @return total records read
+     * @throws IOException any IO issues, including ones raised by the background thread
+     */
+    public static long readInputStreamAsync(InputStream in, int recordWidth, Consumer<FixedRecord> consumer,
+                                            int bufferSize, int bufferCount) throws IOException {
+        if (in == null || consumer == null) throw new IllegalArgumentException("null input");
+        if (recordWidth <= 0) throw new IllegalArgumentException("recordWidth must be > 0");
+        if (bufferSize < recordWidth) throw new IllegalArgumentException("bufferSize must be >= recordWidth");
+        if (bufferCount < 2) throw new IllegalArgumentException("bufferCount must be >= 2");
+
+        final int size = bufferSize / recordWidth * recordWidth;
+        final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(bufferCount);
+        final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(bufferCount + 1);
+        final Chunk end = new Chunk(0); // end of input or error
+        for (int i = 0; i < bufferCount; i++) free.add(new Chunk(size));
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    Chunk c = free.take();
+                    c.length = 0;
+                    int n = 0;
+                    while (c.length < size && (n = in.read(c.data, c.length, size - c.length)) >= 0) {
+                        c.length += n;
+                    }
+                    if (c.length > 0) filled.put(c);
+                    if (n < 0) break;
+                }
+            } catch (IOException e) {
+                end.error = e;
+            } catch (InterruptedException e) {
+                return; // the consumer side gave up
+            } catch (RuntimeException | Error e) {
+                end.error = new IOException(e);
+            }
+            filled.add(end);
+        }, "gava-prefetch");
+        reader.setDaemon(true);
+        reader.start();
+
+        FixedRecord record = newView(recordWidth);
+        long totalRecords = 0;
+        try {
+            Chunk c;
+            while ((c = filled.take()) != end) {
+                int limit = c.length - recordWidth;
+                for (int pos = 0; pos <= limit; pos += recordWidth) {
+                    consumer.accept(record.wrap(c.data, pos));
+                    totalRecords++;
+                }
+                free.add(c);
+            }
+            if (end.error != null) throw end.error;
+            return totalRecords;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("readInputStreamAsync() interrupted");
+        } finally {
+            reader.interrupt();
+        }
     }
-}
 
+    public static long readInputStreamAsync(InputStream in, int recordWidth, Consumer<FixedRecord> consumer)
+            throws IOException {
+        return readInputStreamAsync(in, recordWidth, consumer, Math.max(recordWidth, DEFAULT_BUFFER_SIZE * 16), 3);
+    }
 
+    // Buffer passed between the prefetch thread and the consumer
+    private static final class Chunk {
+        private final byte[] data;
+        private int length = 0;
+        private IOException error = null;
 
+        private Chunk(int size) {this.data = new byte[size];}
+    }
 
+    /**
+     * Reads a fixed-width file through a memory mapping. The file is mapped one window at a time,
+     * so files larger than 2GB are supported. As a FixedRecord reads from a byte[], records are not
+     * read in place from the mapping: the window is copied into a reusable heap block of about
+     * DEFAULT_BUFFER_SIZE bytes with one bulk get() per block, and the record handed to the consumer
+     * is a view over that block (see materialize()). What this saves over readInputStream() is the
+     * read() system calls and the kernel-to-user copy of a stream, not the copy into the heap.
+     * Note: partial data will be ignored.
+     *
+     * @param path        file to read
+     * @param recordWidth width per record
+     * @param consumer    how to process the fixed record
+     * @param windowSize  bytes to map at a time (rounded down to a multiple of recordWidth)
+     * @return total records read
+     * @throws IOException any IO issues
+     */
+    public static long readFile(Path path, int recordWidth, Consumer<FixedRecord> consumer, int windowSize)
+            throws IOException {
+        if (path == null || consumer == null) throw new IllegalArgumentException("null input");
+        if (recordWidth <= 0) throw new IllegalArgumentException("recordWidth must be > 0");
+        if (windowSize < recordWidth) throw new IllegalArgumentException("windowSize must be >= recordWidth");
 
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readChannel(channel, 0, channel.size() / recordWidth, recordWidth, consumer, windowSize);
+        }
+    }
 
+    public static long readFile(Path path, int recordWidth, Consumer<FixedRecord> consumer) throws IOException {
+        return readFile(path, recordWidth, consumer, Math.max(recordWidth, DEFAULT_WINDOW_SIZE));
+    }
+
+    /**
+     * Reads a fixed-width file in parallel. The file is split into record-aligned ranges, and each range
+     * is read on the executor with its own FixedRecord and its own accumulator from the supplier.
+     * Accumulators are merged with the combiner at the end; when ordered is true they are merged in
+     * file order, otherwise in the order the ranges finish. Ranges are read with positional reads into
+     * a heap block, so no part of the file stays mapped. If a range fails, the other ranges stop at
+     * their next block and the file is closed only after all of them have returned.
+     * Note: partial data will be ignored.
+     *
+     * @param path        file to read
+     * @param recordWidth width per record
+     * @param supplier    creates an accumulator per range
+     * @param consumer    how to process the fixed record into the accumulator; called from many threads
+     * @param combiner    merges two accumulators
+     * @param ordered     merge accumulators in file order
+     * @param executor    where ranges are processed
+     * @param chunks      number of ranges to split the file into
+     * @param <A>         accumulator type
+     * @return combined accumulator (an empty one from the supplier if the file has no records)
+     * @throws IOException any IO issues
+     */
+    public static <A> A readFileParallel(Path path, int recordWidth, Supplier<A> supplier,
+                                         BiConsumer<A, FixedRecord> consumer, BinaryOperator<A> combiner,
+                                         boolean ordered, Executor executor, int chunks) throws IOException {
+        if (path == null || supplier == null || consumer == null || combiner == null || executor == null)
+            throw new IllegalArgumentException("null input");
+        if (recordWidth <= 0) throw new IllegalArgumentException("recordWidth must be > 0");
+        if (chunks <= 0) throw new IllegalArgumentException("chunks must be > 0");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long totalRecords = channel.size() / recordWidth;
+            if (totalRecords == 0) return supplier.get();
+
+            int rangeCount = (int) Math.min(chunks, totalRecords);
+            long perRange = totalRecords / rangeCount;
+            long extra = totalRecords % rangeCount; // first `extra` ranges get one more record
+
+            CompletionService<A> service = new ExecutorCompletionService<>(executor);
+            List<Future<A>> futures = new ArrayList<>(rangeCount);
+            AtomicBoolean stop = new AtomicBoolean();
+            try {
+                long from = 0;
+                for (int i = 0; i < rangeCount; i++) {
+                    long to = from + perRange + (i < extra ? 1 : 0);
+                    final long rangeFrom = from;
+                    Callable<A> task = () -> {
+                        A acc = supplier.get();
+                        readRange(channel, rangeFrom, to, recordWidth, r -> consumer.accept(acc, r), stop);
+                        return acc;
+                    };
+                    futures.add(service.submit(task));
+                    from = to;
+                }
+
+                A out = null;
+                for (int i = 0; i < rangeCount; i++) {
+                    A acc = ordered ? futures.get(i).get() : service.take().get();
+                    out = (out == null) ? acc : combiner.apply(out, acc);
+                }
+                return out;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("readFileParallel() interrupted");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new RuntimeException(cause);
+            } finally {
+                // Tasks share the channel, so all of them must return before it is closed. They are not
+                // interrupted: an interrupt during a read would close the channel under the others.
+                stop.set(true);
+                awaitAll(futures);
+            }
+        }
+    }
+
+    public static <A> A readFileParallel(Path path, int recordWidth, Supplier<A> supplier,
+                                         BiConsumer<A, FixedRecord> consumer, BinaryOperator<A> combiner,
+                                         boolean ordered) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        return readFileParallel(path, recordWidth, supplier, consumer, combiner, ordered,
+                pool, pool.getParallelism() * 4);
+    }
+
+    // Waits until every task has returned, ignoring its result; an interrupt is kept for the caller
+    private static void awaitAll(List<? extends Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> f : futures) {
+            while (true) {
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Reads records [fromRecord, toRecord) of the channel with positional reads, a block at a time, until stop is set.
+    // Positional reads do not move the channel position, so ranges of one channel can be read concurrently.
+    private static void readRange(FileChannel channel, long fromRecord, long toRecord, int recordWidth,
+                                  Consumer<FixedRecord> consumer, AtomicBoolean stop) throws IOException {
+        FixedRecord record = newView(recordWidth);
+        int recordsPerBlock = Math.max(1, DEFAULT_BUFFER_SIZE / recordWidth);
+        byte[] block = new byte[recordsPerBlock * recordWidth];
+        ByteBuffer bb = ByteBuffer.wrap(block);
+        long current = fromRecord;
+
+        while (current < toRecord && !stop.get()) {
+            int n = (int) Math.min(recordsPerBlock, toRecord - current);
+            long position = current * recordWidth;
+            bb.clear();
+            bb.limit(n * recordWidth);
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, position + bb.position()) < 0) {
+                    throw new EOFException("position " + (position + bb.position()) + " is beyond the end of file");
+                }
+            }
+            for (int i = 0; i < n; i++) consumer.accept(record.wrap(block, i * recordWidth));
+            current += n;
+        }
+    }
+
+    // Reads records [fromRecord, toRecord) of the channel, mapping up to windowSize bytes at a time.
+    // Each window is copied into a heap block a few thousand records at a time; records are views over the block.
+    static long readChannel(FileChannel channel, long fromRecord, long toRecord, int recordWidth,
+                            Consumer<FixedRecord> consumer, int windowSize) throws IOException {
+        FixedRecord record = newView(recordWidth);
+        int recordsPerWindow = windowSize / recordWidth;
+        int recordsPerBlock = Math.max(1, Math.min(recordsPerWindow, DEFAULT_BUFFER_SIZE / recordWidth));
+        byte[] block = new byte[recordsPerBlock * recordWidth];
+        long current = fromRecord;
+
+        while (current < toRecord) {
+            int count = (int) Math.min(recordsPerWindow, toRecord - current);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    current * recordWidth, (long) count * recordWidth);
+            for (int done = 0; done < count; ) {
+                int n = Math.min(recordsPerBlock, count - done);
+                window.get(block, 0, n * recordWidth);
+                for (int i = 0; i < n; i++) consumer.accept(record.wrap(block, i * recordWidth));
+                done += n;
+            }
+            current += count;
+        }
+        return current - fromRecord;
+    }
+}
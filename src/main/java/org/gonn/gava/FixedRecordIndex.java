@@ -0,0 +1,318 @@
+package org.gonn.gava;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Key lookup for fixed-width files. Record N starts at byte N * recordWidth, so a file sorted by key
+ * can be binary searched directly with find(). For unsorted files, build() writes a sidecar index of
+ * (key, record number) entries sorted by key, which is then binary searched the same way.
+ * Keys are compared byte by byte (unsigned) and shorter keys are padded with spaces.
+ * Lookups only read key bytes with positional reads and are thread-safe.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         // sorted file
+ *         long n = FixedRecordIndex.find(path, 120, 0, 10, "A000123");
+ *
+ *         // unsorted file
+ *         try (FixedRecordIndex index = FixedRecordIndex.build(path, 120, 0, 10, indexPath);
+ *              FileChannel data = FileChannel.open(path)) {
+ *             long n = index.find("A000123");
+ *             if (n &gt;= 0) FixedRecordIndex.read(data, 120, n, record);
+ *         }
+ * </code></pre>
+ */
+public class FixedRecordIndex implements Closeable {
+    private static final int MAGIC = 0x47494458; // "GIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;   // magic, version, recordWidth, keyOffset, keyLength, count, reserved
+
+    private final FileChannel channel;
+    private final int recordWidth;
+    private final int keyOffset;
+    private final int keyLength;
+    private final long count;
+
+    private FixedRecordIndex(FileChannel channel, int recordWidth, int keyOffset, int keyLength, long count) {
+        this.channel = channel;
+        this.recordWidth = recordWidth;
+        this.keyOffset = keyOffset;
+        this.keyLength = keyLength;
+        this.count = count;
+    }
+
+    /**
+     * Builds a sidecar index for an unsorted fixed-width file and opens it.
+     * Entries are sorted with FixedRecordSorter, so the index does not have to fit in memory.
+     *
+     * @param data        fixed-width file
+     * @param recordWidth width per record
+     * @param keyOffset   where the key starts in a record
+     * @param keyLength   key width
+     * @param index       where to write the index
+     * @return opened index
+     * @throws IOException any IO issues
+     */
+    public static FixedRecordIndex build(Path data, int recordWidth, int keyOffset, int keyLength, Path index)
+            throws IOException {
+        if (data == null || index == null) throw new IllegalArgumentException("null input");
+        checkKey(recordWidth, keyOffset, keyLength);
+
+        final int entryWidth = keyLength + 8;
+        Path entries = Files.createTempFile("gava-index-", ".tmp");
+        try {
+            long count;
+            try (FixedRecordWriter writer = FixedRecordWriter.open(entries, FixedRecordWriter.DEFAULT_BUFFER_SIZE,
+                    false)) {
+                final byte[] entry = new byte[entryWidth];
+                final long[] recordNumber = {0};
+                count = FixedRecord.readFile(data, recordWidth, r -> {
+                    System.arraycopy(r.array(), r.offset() + keyOffset, entry, 0, keyLength);
+                    putLong(entry, keyLength, recordNumber[0]++); // big-endian: sorts as a number
+                    try {
+                        writer.write(entry, 0, entryWidth);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            new FixedRecordSorter(entryWidth).sort(entries, entries);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(recordWidth).putInt(keyOffset).putInt(keyLength)
+                    .putLong(count).putInt(0).flip();
+            try (FileChannel out = FileChannel.open(index, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 FileChannel in = FileChannel.open(entries, StandardOpenOption.READ)) {
+                while (header.hasRemaining()) out.write(header);
+                long size = in.size();
+                long done = 0;
+                while (done < size) done += in.transferTo(done, size - done, out);
+            }
+        } finally {
+            Files.deleteIfExists(entries);
+        }
+        return open(index);
+    }
+
+    public static FixedRecordIndex open(Path index) throws IOException {
+        if (index == null) throw new IllegalArgumentException("null input");
+        FileChannel channel = FileChannel.open(index, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("not a gava index: " + index);
+            }
+            int recordWidth = header.getInt();
+            int keyOffset = header.getInt();
+            int keyLength = header.getInt();
+            long count = header.getLong();
+            if (channel.size() != HEADER_SIZE + count * (keyLength + 8)) {
+                throw new IOException("truncated index: " + index);
+            }
+            return new FixedRecordIndex(channel, recordWidth, keyOffset, keyLength, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the first record with the key.
+     *
+     * @param key key to find
+     * @return record number in the data file, or -1 if not found
+     * @throws IOException any IO issues
+     */
+    public long find(byte[] key) throws IOException {
+        byte[] k = pad(key, this.keyLength);
+        long i = search(this.channel, HEADER_SIZE, this.count, this.keyLength + 8, 0, k);
+        return i < 0 ? -1 : this.recordNumber(i);
+    }
+
+    public long find(String key) throws IOException {
+        return this.find(toBytes(key));
+    }
+
+    /**
+     * Passes record numbers of all records with the key, in ascending order.
+     *
+     * @param key      key to find
+     * @param consumer receives record numbers
+     * @return number of records found
+     * @throws IOException any IO issues
+     */
+    public long findAll(byte[] key, LongConsumer consumer) throws IOException {
+        byte[] k = pad(key, this.keyLength);
+        long i = search(this.channel, HEADER_SIZE, this.count, this.keyLength + 8, 0, k);
+        if (i < 0) return 0;
+
+        byte[] entry = new byte[this.keyLength + 8];
+        ByteBuffer bb = ByteBuffer.wrap(entry);
+        long found = 0;
+        for (; i < this.count; i++) {
+            bb.clear();
+            readFully(this.channel, bb, HEADER_SIZE + i * entry.length);
+            if (compare(entry, 0, k) != 0) break;
+            consumer.accept(getLong(entry, this.keyLength));
+            found++;
+        }
+        return found;
+    }
+
+    public long findAll(String key, LongConsumer consumer) throws IOException {
+        return this.findAll(toBytes(key), consumer);
+    }
+
+    public int getRecordWidth() {return this.recordWidth;}
+
+    public int getKeyOffset() {return this.keyOffset;}
+
+    public int getKeyLength() {return this.keyLength;}
+
+    public long size() {return this.count;}
+
+    @Override
+    public void close() throws IOException {this.channel.close();}
+
+    private long recordNumber(long entry) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(8);
+        readFully(this.channel, bb, HEADER_SIZE + entry * (this.keyLength + 8) + this.keyLength);
+        return bb.getLong(0);
+    }
+
+    // ================================================================================
+    // Sorted data file
+    // ================================================================================
+
+    /**
+     * Binary searches a fixed-width file sorted by key. Only the key bytes of about log2(records)
+     * records are read.
+     *
+     * @param data        fixed-width file sorted by key
+     * @param recordWidth width per record
+     * @param keyOffset   where the key starts in a record
+     * @param keyLength   key width
+     * @param key         key to find
+     * @return record number of the first record with the key; otherwise, (-(insertion point) - 1)
+     * @throws IOException any IO issues
+     */
+    public static long find(FileChannel data, int recordWidth, int keyOffset, int keyLength, byte[] key)
+            throws IOException {
+        if (data == null) throw new IllegalArgumentException("null input");
+        checkKey(recordWidth, keyOffset, keyLength);
+        return search(data, 0, data.size() / recordWidth, recordWidth, keyOffset, pad(key, keyLength));
+    }
+
+    public static long find(Path data, int recordWidth, int keyOffset, int keyLength, String key)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+            return find(channel, recordWidth, keyOffset, keyLength, toBytes(key));
+        }
+    }
+
+    /**
+     * Reads record N of a fixed-width file into target.
+     *
+     * @param data         fixed-width file
+     * @param recordWidth  width per record
+     * @param recordNumber record to read, starting with 0
+     * @param target       record to fill; must be recordWidth wide
+     * @return target
+     * @throws IOException any IO issues
+     */
+    public static FixedRecord read(FileChannel data, int recordWidth, long recordNumber, FixedRecord target)
+            throws IOException {
+        if (data == null || target == null) throw new IllegalArgumentException("null input");
+        if (target.length() != recordWidth) throw new IllegalArgumentException("target must be recordWidth wide");
+        if (recordNumber < 0) throw new IllegalArgumentException("recordNumber must be >= 0");
+        readFully(data, ByteBuffer.wrap(target.array(), target.offset(), recordWidth), recordNumber * recordWidth);
+        return target;
+    }
+
+    // Lower bound of key among count entries of width bytes starting at base
+    private static long search(FileChannel channel, long base, long count, int width, int keyOffset, byte[] key)
+            throws IOException {
+        byte[] probe = new byte[key.length];
+        ByteBuffer bb = ByteBuffer.wrap(probe);
+        long lo = 0;
+        long hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            bb.clear();
+            readFully(channel, bb, base + mid * width + keyOffset);
+            if (compare(probe, 0, key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        if (lo < count) {
+            bb.clear();
+            readFully(channel, bb, base + lo * width + keyOffset);
+            if (compare(probe, 0, key) == 0) return lo;
+        }
+        return -lo - 1;
+    }
+
+    private static int compare(byte[] a, int offset, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            int c = (a[offset + i] & 0xFF) - (key[i] & 0xFF);
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer bb, long position) throws IOException {
+        while (bb.hasRemaining()) {
+            int n = channel.read(bb, position);
+            if (n < 0) throw new EOFException("position " + position + " is beyond the end of file");
+            position += n;
+        }
+    }
+
+    private static void checkKey(int recordWidth, int keyOffset, int keyLength) {
+        if (recordWidth <= 0) throw new IllegalArgumentException("recordWidth must be > 0");
+        if (keyOffset < 0 || keyLength <= 0 || keyOffset + keyLength > recordWidth)
+            throw new IllegalArgumentException("Invalid key: offset=" + keyOffset + ", length=" + keyLength);
+    }
+
+    private static byte[] toBytes(String key) {
+        if (key == null) throw new IllegalArgumentException("null key");
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] pad(byte[] key, int keyLength) {
+        if (key == null) throw new IllegalArgumentException("null key");
+        if (key.length > keyLength) throw new IllegalArgumentException("key is longer than " + keyLength);
+        if (key.length == keyLength) return key;
+        byte[] out = Arrays.copyOf(key, keyLength);
+        Arrays.fill(out, key.length, keyLength, (byte) ' ');
+        return out;
+    }
+
+    private static void putLong(byte[] b, int offset, long v) {
+        for (int i = 7; i >= 0; i--) {
+            b[offset + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] b, int offset) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | (b[offset + i] & 0xFF);
+        return v;
+    }
+}
@@ -0,0 +1,363 @@
+package org.gonn.gava;
+
+import org.gonn.gava.FixedLayout.Field;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * External merge sort for fixed-width files. Records are sorted by key ranges compared byte by byte
+ * (unsigned), so numeric keys should be zero-padded. The sort is stable.
+ * <br>
+ * The input is split into runs that fit in the memory limit. Each run is sorted as an array of record
+ * indexes (no record objects) and spilled to a temp file; runs are sorted in parallel. Sorted runs are
+ * then merged with a heap. Partial data at the end of the input is ignored.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         FixedRecordSorter.newInstance(120)
+ *                 .addKey(10, 8)          // date, ascending
+ *                 .addKey(0, 10, true)    // id, descending
+ *                 .setMemoryLimit(512L * 1024 * 1024)
+ *                 .sort(input, output);
+ * </code></pre>
+ */
+public class FixedRecordSorter {
+    public static final long DEFAULT_MEMORY_LIMIT = 256L * 1024 * 1024;
+    public static final int MAX_MERGE_WIDTH = 64; // runs merged at a time
+
+    private final int recordWidth;
+    private final List<int[]> keys = new ArrayList<>(); // {offset, length, descending ? 1 : 0}
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+    private int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private Path tempDirectory = null;
+
+    public FixedRecordSorter(int recordWidth) {
+        if (recordWidth <= 0) throw new IllegalArgumentException("recordWidth must be > 0");
+        this.recordWidth = recordWidth;
+    }
+
+    public static FixedRecordSorter newInstance(int recordWidth) {return new FixedRecordSorter(recordWidth);}
+
+    public FixedRecordSorter addKey(int offset, int length, boolean descending) {
+        if (offset < 0 || length <= 0 || offset + length > this.recordWidth)
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
+        this.keys.add(new int[]{offset, length, descending ? 1 : 0});
+        return this;
+    }
+
+    public FixedRecordSorter addKey(int offset, int length) {
+        return this.addKey(offset, length, false);
+    }
+
+    public FixedRecordSorter addKey(Field field, boolean descending) {
+        if (field == null) throw new IllegalArgumentException("field cannot be null");
+        return this.addKey(field.getOffset(), field.getWidth(), descending);
+    }
+
+    public FixedRecordSorter addKey(Field field) {
+        return this.addKey(field, false);
+    }
+
+    // Approximate bytes used for records and indexes across all parallel runs
+    public FixedRecordSorter setMemoryLimit(long bytes) {
+        if (bytes <= 0) throw new IllegalArgumentException("memoryLimit must be > 0");
+        this.memoryLimit = bytes;
+        return this;
+    }
+
+    public FixedRecordSorter setParallelism(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be > 0");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    // Where runs are spilled; null for the system default
+    public FixedRecordSorter setTempDirectory(Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    /**
+     * Sorts the input file into the output file. Input and output can be the same file.
+     *
+     * @param input  fixed-width file to sort
+     * @param output where to write the sorted records
+     * @return total records sorted
+     * @throws IOException any IO issues
+     */
+    public long sort(Path input, Path output) throws IOException {
+        if (input == null || output == null) throw new IllegalArgumentException("null input");
+        final int[][] keys = this.keys.isEmpty()
+                ? new int[][]{{0, this.recordWidth, 0}}
+                : this.keys.toArray(new int[0][]);
+
+        // record bytes + index + merge sort scratch index, per parallel run, after its write buffer
+        long perRunBytes = this.memoryLimit / this.parallelism;
+        final int writeSize = (int) Math.max(this.recordWidth,
+                Math.min(FixedRecordWriter.DEFAULT_BUFFER_SIZE, perRunBytes / 8));
+        long perRun = (perRunBytes - writeSize) / (this.recordWidth + 8);
+        final int recordsPerRun = (int) Math.max(1, Math.min(perRun, (Integer.MAX_VALUE - 8) / this.recordWidth));
+
+        List<Path> temps = new ArrayList<>(); // every run file, spilled or merged; deleted at the end
+        try {
+            long totalRecords;
+            Run single = null; // when everything fits in memory, there is no spill
+            try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+                totalRecords = in.size() / this.recordWidth;
+                if (totalRecords <= recordsPerRun) {
+                    single = new Run(this.recordWidth, (int) totalRecords, keys);
+                    single.load(in, 0, (int) totalRecords);
+                } else {
+                    this.spill(in, totalRecords, recordsPerRun, writeSize, keys, temps);
+                }
+            }
+            if (single != null) {
+                single.write(output, writeSize);
+                return totalRecords;
+            }
+
+            // Merge MAX_MERGE_WIDTH runs at a time until the rest fits in one merge
+            List<Path> runs = new ArrayList<>(temps);
+            while (runs.size() > MAX_MERGE_WIDTH) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MAX_MERGE_WIDTH) {
+                    List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_MERGE_WIDTH));
+                    Path p = this.createTempFile();
+                    temps.add(p);
+                    merged.add(p);
+                    this.merge(group, p, keys);
+                    for (Path g : group) Files.deleteIfExists(g);
+                }
+                runs = merged;
+            }
+            this.merge(runs, output, keys);
+            return totalRecords;
+        } finally {
+            deleteAll(temps);
+        }
+    }
+
+    // Best effort, so that one file that cannot be deleted does not leave the others behind
+    private static void deleteAll(List<Path> paths) {
+        for (Path p : paths) {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException e) {
+                // left behind in the temp directory
+            }
+        }
+    }
+
+    private void spill(FileChannel in, long totalRecords, int recordsPerRun, int writeSize, int[][] keys,
+                       List<Path> runs) throws IOException {
+        final int runCount = (int) ((totalRecords + recordsPerRun - 1) / recordsPerRun);
+        for (int i = 0; i < runCount; i++) runs.add(this.createTempFile());
+
+        final int workers = Math.min(this.parallelism, runCount);
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int worker = w;
+            tasks.add(() -> {
+                Run run = null; // reused by every run of this worker
+                for (int i = worker; i < runCount; i += workers) {
+                    long from = (long) i * recordsPerRun;
+                    int count = (int) Math.min(recordsPerRun, totalRecords - from);
+                    if (run == null) run = new Run(this.recordWidth, count, keys);
+                    run.load(in, from, count);
+                    run.write(runs.get(i), writeSize);
+                }
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "gava-sort");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (Future<Void> f : executor.invokeAll(tasks)) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("sort() interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void merge(List<Path> runs, Path output, int[][] keys) throws IOException {
+        int bufferSize = (int) Math.max(this.recordWidth,
+                Math.min(Integer.MAX_VALUE - 8, this.memoryLimit / (runs.size() + 1)));
+        bufferSize = bufferSize / this.recordWidth * this.recordWidth;
+        // The writer only batches writes: a small heap buffer, so nothing is allocated outside of the heap
+        final int writeSize = Math.max(this.recordWidth, Math.min(bufferSize, FixedRecordWriter.DEFAULT_BUFFER_SIZE));
+
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(runs.size(), (a, b) -> {
+            int c = compare(a.buffer, a.position, b.buffer, b.position, keys);
+            return c != 0 ? c : Integer.compare(a.index, b.index); // stable: earlier run first
+        });
+
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try (FixedRecordWriter writer = FixedRecordWriter.open(output, writeSize, false)) {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader r = new RunReader(FileChannel.open(runs.get(i), StandardOpenOption.READ),
+                        i, this.recordWidth, bufferSize);
+                readers.add(r);
+                if (r.next()) heap.add(r);
+            }
+            RunReader r;
+            while ((r = heap.poll()) != null) {
+                writer.write(r.buffer, r.position, this.recordWidth);
+                if (r.next()) heap.add(r);
+            }
+        } finally {
+            for (RunReader r : readers) r.channel.close();
+        }
+    }
+
+    private Path createTempFile() throws IOException {
+        return this.tempDirectory == null
+                ? Files.createTempFile("gava-sort-", ".run")
+                : Files.createTempFile(this.tempDirectory, "gava-sort-", ".run");
+    }
+
+    // Compares two records by keys, byte by byte as unsigned values
+    static int compare(byte[] a, int aOffset, byte[] b, int bOffset, int[][] keys) {
+        for (int[] key : keys) {
+            int ai = aOffset + key[0];
+            int bi = bOffset + key[0];
+            int end = ai + key[1];
+            for (; ai < end; ai++, bi++) {
+                if (a[ai] != b[bi]) {
+                    int c = (a[ai] & 0xFF) - (b[bi] & 0xFF);
+                    return key[2] == 0 ? c : -c;
+                }
+            }
+        }
+        return 0;
+    }
+
+    // Records of one run and their sort order as record indexes
+    private static class Run {
+        private final int width;
+        private final int[][] keys;
+        private final byte[] data;
+        private final int[] index;
+        private final int[] scratch;
+        private int count = 0;
+
+        Run(int width, int capacity, int[][] keys) {
+            this.width = width;
+            this.keys = keys;
+            this.data = new byte[capacity * width];
+            this.index = new int[capacity];
+            this.scratch = new int[capacity];
+        }
+
+        void load(FileChannel in, long fromRecord, int count) throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(this.data, 0, count * this.width);
+            long position = fromRecord * this.width;
+            while (bb.hasRemaining()) {
+                int n = in.read(bb, position);
+                if (n < 0) throw new IOException("unexpected end of input");
+                position += n;
+            }
+            this.count = count;
+            for (int i = 0; i < count; i++) this.index[i] = i;
+            this.sort(this.index, this.scratch, 0, count);
+        }
+
+        // Heap buffer of writeSize bytes, counted in the memory limit like the records
+        void write(Path output, int writeSize) throws IOException {
+            try (FixedRecordWriter writer = FixedRecordWriter.open(output, writeSize, false)) {
+                for (int i = 0; i < this.count; i++) {
+                    writer.write(this.data, this.index[i] * this.width, this.width);
+                }
+            }
+        }
+
+        // Stable merge sort on record indexes; sorted result ends up in src[from, to)
+        private void sort(int[] src, int[] tmp, int from, int to) {
+            if (to - from <= 16) {
+                for (int i = from + 1; i < to; i++) {
+                    int v = src[i];
+                    int j = i - 1;
+                    while (j >= from && this.compare(src[j], v) > 0) {
+                        src[j + 1] = src[j];
+                        j--;
+                    }
+                    src[j + 1] = v;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            this.sort(src, tmp, from, mid);
+            this.sort(src, tmp, mid, to);
+            if (this.compare(src[mid - 1], src[mid]) <= 0) return; // already in order
+
+            System.arraycopy(src, from, tmp, from, to - from);
+            int i = from, j = mid, k = from;
+            while (i < mid && j < to) src[k++] = this.compare(tmp[j], tmp[i]) < 0 ? tmp[j++] : tmp[i++];
+            while (i < mid) src[k++] = tmp[i++];
+            while (j < to) src[k++] = tmp[j++];
+        }
+
+        private int compare(int a, int b) {
+            return FixedRecordSorter.compare(this.data, a * this.width, this.data, b * this.width, this.keys);
+        }
+    }
+
+    // Sequential reader over a sorted run file
+    private static class RunReader {
+        private final FileChannel channel;
+        private final int index;
+        private final int width;
+        private final byte[] buffer;
+        private final ByteBuffer bb;
+        private int position;
+        private int limit = 0;
+
+        RunReader(FileChannel channel, int index, int width, int bufferSize) {
+            this.channel = channel;
+            this.index = index;
+            this.width = width;
+            this.buffer = new byte[bufferSize];
+            this.bb = ByteBuffer.wrap(this.buffer);
+            this.position = -width;
+        }
+
+        // Moves to the next record; false at the end of the run
+        boolean next() throws IOException {
+            this.position += this.width;
+            if (this.position + this.width <= this.limit) return true;
+
+            this.bb.clear();
+            while (this.bb.hasRemaining() && this.channel.read(this.bb) >= 0) {
+                // fill the buffer so that it always holds whole records
+            }
+            this.limit = this.bb.position() / this.width * this.width;
+            this.position = 0;
+            return this.limit > 0;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.gonn.gava;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Batched writer for FixedRecord. Records are copied into large reusable buffers and written out
+ * in big blocks. With more than one buffer, all buffers are written with a single gathering write.
+ * This is not thread-safe.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         try (FixedRecordWriter w = FixedRecordWriter.open(path).setRecordSeparator(new byte[]{'\n'})) {
+ *             FixedRecord r = layout.newRecord();
+ *             for (Customer c : customers) {
+ *                 id.set(r, c.getId());
+ *                 name.set(r, c.getName());
+ *                 w.write(r);
+ *             }
+ *         }
+ * </code></pre>
+ */
+public class FixedRecordWriter implements Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final WritableByteChannel channel; // either channel or out is set
+    private final OutputStream out;
+    private final ByteBuffer[] buffers;
+    private int current = 0;
+    private byte[] separator = null;
+    private long bytesWritten = 0;
+    private long recordsWritten = 0;
+
+    /**
+     * @param channel     where to write
+     * @param bufferSize  bytes per buffer
+     * @param bufferCount number of buffers; when more than one, they are flushed with a gathering write
+     * @param direct      use direct (off-heap) buffers
+     */
+    public FixedRecordWriter(WritableByteChannel channel, int bufferSize, int bufferCount, boolean direct) {
+        this(channel, null, bufferSize, bufferCount, direct);
+    }
+
+    public FixedRecordWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE, 1, true);
+    }
+
+    /**
+     * An OutputStream can only take heap buffers, so the buffer is written with out.write(byte[]).
+     *
+     * @param out        where to write
+     * @param bufferSize bytes to buffer before writing
+     */
+    public FixedRecordWriter(OutputStream out, int bufferSize) {
+        this(null, out, bufferSize, 1, false);
+    }
+
+    public FixedRecordWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    private FixedRecordWriter(WritableByteChannel channel, OutputStream out, int bufferSize, int bufferCount,
+                              boolean direct) {
+        if (channel == null && out == null) throw new IllegalArgumentException("null output");
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be > 0");
+        if (bufferCount <= 0) throw new IllegalArgumentException("bufferCount must be > 0");
+        this.channel = channel;
+        this.out = out;
+        this.buffers = new ByteBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            this.buffers[i] = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+    }
+
+    /**
+     * Creates (or truncates) a file and writes to it with direct buffers.
+     *
+     * @param path file to write
+     * @return a new writer
+     * @throws IOException any IO issues
+     */
+    public static FixedRecordWriter open(Path path) throws IOException {
+        return open(path, DEFAULT_BUFFER_SIZE, true);
+    }
+
+    /**
+     * Creates (or truncates) a file and writes to it with one buffer. The file is closed if the
+     * buffer cannot be allocated.
+     *
+     * @param path       file to write
+     * @param bufferSize bytes to buffer before writing
+     * @param direct     use a direct (off-heap) buffer
+     * @return a new writer
+     * @throws IOException any IO issues
+     */
+    public static FixedRecordWriter open(Path path, int bufferSize, boolean direct) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            return new FixedRecordWriter(channel, bufferSize, 1, direct);
+        } catch (RuntimeException | Error e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Bytes written after each record, such as a newline. Null for none.
+     *
+     * @param separator bytes to write after each record
+     * @return this writer
+     */
+    public FixedRecordWriter setRecordSeparator(byte[] separator) {
+        this.separator = (separator == null || separator.length == 0) ? null : separator.clone();
+        return this;
+    }
+
+    public void write(FixedRecord record) throws IOException {
+        if (record == null) throw new IllegalArgumentException("null record");
+        this.write(record.array(), record.offset(), record.length());
+    }
+
+    /**
+     * Writes bytes as one record (followed by the record separator, if any).
+     *
+     * @param b      source
+     * @param offset start of the record in b
+     * @param length record length
+     * @throws IOException any IO issues
+     */
+    public void write(byte[] b, int offset, int length) throws IOException {
+        if (b == null) throw new IllegalArgumentException("null input");
+        if (offset < 0 || length < 0 || offset + length > b.length)
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
+        this.put(b, offset, length);
+        if (this.separator != null) this.put(this.separator, 0, this.separator.length);
+        this.recordsWritten++;
+    }
+
+    private void put(byte[] b, int offset, int length) throws IOException {
+        this.bytesWritten += length;
+        while (length > 0) {
+            ByteBuffer buf = this.buffers[this.current];
+            if (!buf.hasRemaining()) {
+                if (++this.current == this.buffers.length) this.drain();
+                buf = this.buffers[this.current];
+            }
+            int n = Math.min(length, buf.remaining());
+            buf.put(b, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    // Writes all buffered bytes and clears the buffers
+    private void drain() throws IOException {
+        int count = Math.min(this.current + 1, this.buffers.length);
+        for (int i = 0; i < count; i++) this.buffers[i].flip();
+
+        if (this.out != null) {
+            ByteBuffer buf = this.buffers[0];
+            this.out.write(buf.array(), buf.arrayOffset(), buf.limit());
+        } else if (count > 1 && this.channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) this.channel;
+            long remaining = 0;
+            for (int i = 0; i < count; i++) remaining += this.buffers[i].remaining();
+            while (remaining > 0) remaining -= gathering.write(this.buffers, 0, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                while (this.buffers[i].hasRemaining()) this.channel.write(this.buffers[i]);
+            }
+        }
+
+        for (int i = 0; i < count; i++) this.buffers[i].clear();
+        this.current = 0;
+    }
+
+    public void flush() throws IOException {
+        this.drain();
+        if (this.out != null) this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            if (this.out != null) this.out.close();
+            else this.channel.close();
+        }
+    }
+
+    // Bytes accepted so far, including record separators and bytes still in the buffer
+    public long countBytes() {return this.bytesWritten;}
+
+    public long countRecords() {return this.recordsWritten;}
+}
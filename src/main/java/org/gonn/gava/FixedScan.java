@@ -0,0 +1,346 @@
+package org.gonn.gava;
+
+import org.gonn.gava.FixedLayout.Field;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Scans fixed-width data with predicates and an optional projection. Predicates are evaluated on
+ * the raw record bytes, so rejected records are never decoded nor handed to the consumer.
+ * With a projection, only the selected fields are copied, back to back, into a narrower record.
+ * This is not thread-safe.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         FixedScan scan = FixedScan.newInstance(layout.getWidth())
+ *                 .where(FixedScan.equalTo(layout.get("state"), "CA"))
+ *                 .where(FixedScan.between(layout.get("amount"), 100, 500))
+ *                 .project(layout.get("id"), layout.get("amount"));
+ *         FixedLayout.LongField amount = scan.getProjectedLayout().getLong("amount");
+ *         scan.readFile(path, r -&gt; total += amount.get(r));
+ * </code></pre>
+ */
+public class FixedScan {
+    private final int recordWidth;
+    private Predicate predicate = null;
+    private Field[] projection = null;
+    private FixedLayout projectedLayout = null;
+
+    public FixedScan(int recordWidth) {
+        if (recordWidth <= 0) throw new IllegalArgumentException("recordWidth must be > 0");
+        this.recordWidth = recordWidth;
+    }
+
+    public static FixedScan newInstance(int recordWidth) {return new FixedScan(recordWidth);}
+
+    /**
+     * Adds a predicate. Multiple predicates are combined with AND, in the order they were added.
+     * A predicate on a field that extends past the record width is rejected.
+     *
+     * @param p predicate to add
+     * @return this scan
+     */
+    public FixedScan where(Predicate p) {
+        if (p == null) throw new IllegalArgumentException("predicate cannot be null");
+        if (p.reach() > this.recordWidth) {
+            throw new IllegalArgumentException("predicate reads " + p.reach() + " bytes, past recordWidth "
+                    + this.recordWidth);
+        }
+        this.predicate = (this.predicate == null) ? p : this.predicate.and(p);
+        return this;
+    }
+
+    /**
+     * Only the given fields are passed to the consumer, copied back to back into a narrower record.
+     * See getProjectedLayout() for the field positions in the projected record.
+     *
+     * @param fields fields to keep, in output order
+     * @return this scan
+     */
+    public FixedScan project(Field... fields) {
+        if (fields == null || fields.length == 0) throw new IllegalArgumentException("no fields to project");
+        FixedLayout layout = FixedLayout.newInstance();
+        int offset = 0;
+        for (Field f : fields) {
+            checkField(f, this.recordWidth);
+            layout.add(relocate(f, offset));
+            offset += f.getWidth();
+        }
+        this.projection = fields.clone();
+        this.projectedLayout = layout;
+        return this;
+    }
+
+    // Layout of the records handed to the consumer when projecting; null without a projection
+    public FixedLayout getProjectedLayout() {return this.projectedLayout;}
+
+    public long readInputStream(InputStream in, Consumer<FixedRecord> consumer) throws IOException {
+        if (consumer == null) throw new IllegalArgumentException("null input");
+        long[] matched = {0};
+        FixedRecord.readInputStream(in, this.recordWidth, this.dispatcher(consumer, matched));
+        return matched[0];
+    }
+
+    public long readFile(Path path, Consumer<FixedRecord> consumer) throws IOException {
+        if (consumer == null) throw new IllegalArgumentException("null input");
+        long[] matched = {0};
+        FixedRecord.readFile(path, this.recordWidth, this.dispatcher(consumer, matched));
+        return matched[0];
+    }
+
+    /**
+     * Wraps a consumer so that it only receives matching (and projected) records. Can be used
+     * with any of the FixedRecord readers.
+     *
+     * @param consumer how to process the matching record
+     * @return a consumer for the FixedRecord readers
+     */
+    public Consumer<FixedRecord> filter(Consumer<FixedRecord> consumer) {
+        if (consumer == null) throw new IllegalArgumentException("null input");
+        return this.dispatcher(consumer, new long[1]);
+    }
+
+    private Consumer<FixedRecord> dispatcher(Consumer<FixedRecord> consumer, long[] matched) {
+        final Predicate p = this.predicate;
+        // filter() can be handed to a reader narrower than this scan, so every record is checked
+        int reach = p == null ? 0 : p.reach();
+        if (this.projection != null) {
+            for (Field f : this.projection) reach = Math.max(reach, f.getOffset() + f.getWidth());
+        }
+        final int need = reach;
+        if (this.projection == null) {
+            return r -> {
+                checkLength(r, need);
+                if (p == null || p.test(r.array(), r.offset())) {
+                    matched[0]++;
+                    consumer.accept(r);
+                }
+            };
+        }
+
+        final Field[] fields = this.projection;
+        final FixedRecord out = this.projectedLayout.newRecord();
+        return r -> {
+            checkLength(r, need);
+            byte[] b = r.array();
+            int base = r.offset();
+            if (p != null && !p.test(b, base)) return;
+            byte[] o = out.array();
+            int pos = 0;
+            for (Field f : fields) {
+                System.arraycopy(b, base + f.getOffset(), o, pos, f.getWidth());
+                pos += f.getWidth();
+            }
+            matched[0]++;
+            consumer.accept(out);
+        };
+    }
+
+    private static void checkLength(FixedRecord r, int need) {
+        if (r.length() < need) {
+            throw new IllegalArgumentException("scan reads " + need + " bytes, past record length " + r.length());
+        }
+    }
+
+    // Same field type at a new offset; other Field subclasses cannot be rebuilt, so they are rejected
+    private static Field relocate(Field f, int offset) {
+        Class<?> type = f.getClass();
+        if (type == FixedLayout.IntField.class) return new FixedLayout.IntField(f.getName(), offset, f.getWidth());
+        if (type == FixedLayout.LongField.class) return new FixedLayout.LongField(f.getName(), offset, f.getWidth());
+        if (type == FixedLayout.DecimalField.class) {
+            return new FixedLayout.DecimalField(f.getName(), offset, f.getWidth(),
+                    ((FixedLayout.DecimalField) f).getScale());
+        }
+        if (type == FixedLayout.DateField.class) return new FixedLayout.DateField(f.getName(), offset);
+        if (type == FixedLayout.TextField.class) return new FixedLayout.TextField(f.getName(), offset, f.getWidth());
+        throw new IllegalArgumentException("cannot project field " + f.getName() + " of type " + type.getName());
+    }
+
+    private static void checkField(Field f, int recordWidth) {
+        if (f == null) throw new IllegalArgumentException("field cannot be null");
+        if (f.getOffset() + f.getWidth() > recordWidth) {
+            throw new IllegalArgumentException("field " + f.getName() + " is outside of the record");
+        }
+    }
+
+    // ================================================================================
+    // Predicates
+    // ================================================================================
+
+    /**
+     * Predicate on raw record bytes.
+     */
+    @FunctionalInterface
+    public interface Predicate {
+        /**
+         * @param b      buffer holding the record
+         * @param offset where the record starts in b
+         * @return true if the record matches
+         */
+        boolean test(byte[] b, int offset);
+
+        // Bytes read from the start of the record: the end of the last field tested; 0 if not known
+        default int reach() {return 0;}
+
+        default boolean test(FixedRecord r) {
+            if (this.reach() > r.length()) throw new IllegalArgumentException("predicate reads past the record");
+            return this.test(r.array(), r.offset());
+        }
+
+        default Predicate and(Predicate other) {
+            int reach = Math.max(this.reach(), other.reach());
+            return new Bounded((b, off) -> this.test(b, off) && other.test(b, off), reach);
+        }
+
+        default Predicate or(Predicate other) {
+            int reach = Math.max(this.reach(), other.reach());
+            return new Bounded((b, off) -> this.test(b, off) || other.test(b, off), reach);
+        }
+
+        default Predicate negate() {return new Bounded((b, off) -> !this.test(b, off), this.reach());}
+    }
+
+    // Predicate that knows how far into the record it reads, so where() can check it against the width
+    private static final class Bounded implements Predicate {
+        private final Predicate test;
+        private final int reach;
+
+        private Bounded(Predicate test, int reach) {
+            this.test = test;
+            this.reach = reach;
+        }
+
+        @Override
+        public boolean test(byte[] b, int offset) {return this.test.test(b, offset);}
+
+        @Override
+        public int reach() {return this.reach;}
+    }
+
+    private static Predicate bounded(Field f, Predicate test) {return new Bounded(test, f.getOffset() + f.getWidth());}
+
+    /**
+     * Field value, with surrounding spaces trimmed, equals the given value.
+     *
+     * @param f     field to check
+     * @param value expected value
+     * @return predicate
+     */
+    public static Predicate equalTo(Field f, String value) {
+        if (f == null) throw new IllegalArgumentException("field cannot be null");
+        final byte[] v = toBytes(value);
+        final int start = f.getOffset();
+        final int width = f.getWidth();
+        return bounded(f, (b, off) -> {
+            int s = off + start;
+            int e = s + width;
+            while (s < e && b[s] == ' ') s++;
+            while (e > s && b[e - 1] == ' ') e--;
+            return matches(b, s, e, v);
+        });
+    }
+
+    /**
+     * Raw field value starts with the given prefix.
+     *
+     * @param f      field to check
+     * @param prefix expected prefix
+     * @return predicate
+     */
+    public static Predicate startsWith(Field f, String prefix) {
+        if (f == null) throw new IllegalArgumentException("field cannot be null");
+        final byte[] v = toBytes(prefix);
+        final int start = f.getOffset();
+        if (v.length > f.getWidth()) return bounded(f, (b, off) -> false);
+        return bounded(f, (b, off) -> {
+            int s = off + start;
+            for (int i = 0; i < v.length; i++) {
+                if (b[s + i] != v[i]) return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Numeric text of the field is within [min, max]. Fields that are not numeric never match.
+     *
+     * @param f   field to check
+     * @param min minimum value, inclusive
+     * @param max maximum value, inclusive
+     * @return predicate
+     */
+    public static Predicate between(Field f, long min, long max) {
+        if (f == null) throw new IllegalArgumentException("field cannot be null");
+        final int start = f.getOffset();
+        final int width = f.getWidth();
+        if (min > max) return bounded(f, (b, off) -> false);
+        if (min == Long.MIN_VALUE && max == Long.MAX_VALUE) {
+            // any number matches; a field is numeric when both fallbacks are ignored
+            return bounded(f, (b, off) -> FixedLayout.parseLong(b, off + start, width, 0, false)
+                    == FixedLayout.parseLong(b, off + start, width, 1, false));
+        }
+        final long invalid = min > Long.MIN_VALUE ? min - 1 : max + 1; // outside of [min, max]
+        return bounded(f, (b, off) -> {
+            long v = FixedLayout.parseLong(b, off + start, width, invalid, false);
+            return v >= min && v <= max;
+        });
+    }
+
+    /**
+     * Field value, with surrounding spaces trimmed, is one of the given values.
+     *
+     * @param f      field to check
+     * @param values accepted values
+     * @return predicate
+     */
+    public static Predicate in(Field f, String... values) {
+        if (f == null) throw new IllegalArgumentException("field cannot be null");
+        if (values == null || values.length == 0) return bounded(f, (b, off) -> false);
+        final int start = f.getOffset();
+        final int width = f.getWidth();
+
+        // Open addressing by (length, first byte, last byte) so most misses cost one lookup
+        int size = Integer.highestOneBit(values.length * 4 - 1) << 1;
+        final byte[][] table = new byte[size][];
+        final int mask = size - 1;
+        for (String value : values) {
+            byte[] v = toBytes(value);
+            int h = hash(v, 0, v.length) & mask;
+            while (table[h] != null && !matches(v, 0, v.length, table[h])) h = (h + 1) & mask;
+            table[h] = v;
+        }
+        return bounded(f, (b, off) -> {
+            int s = off + start;
+            int e = s + width;
+            while (s < e && b[s] == ' ') s++;
+            while (e > s && b[e - 1] == ' ') e--;
+            for (int h = hash(b, s, e) & mask; table[h] != null; h = (h + 1) & mask) {
+                if (matches(b, s, e, table[h])) return true;
+            }
+            return false;
+        });
+    }
+
+    private static byte[] toBytes(String s) {
+        if (s == null) throw new IllegalArgumentException("value cannot be null");
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean matches(byte[] b, int start, int end, byte[] v) {
+        if (end - start != v.length) return false;
+        for (int i = 0; i < v.length; i++) {
+            if (b[start + i] != v[i]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(byte[] b, int start, int end) {
+        int len = end - start;
+        if (len == 0) return 0;
+        return (len * 31 + b[start]) * 31 + b[end - 1];
+    }
+}
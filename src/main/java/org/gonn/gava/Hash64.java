@@ -0,0 +1,283 @@
+package org.gonn.gava;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 64-bit xxHash (XXH64) of bytes, for hash partitioning, bloom filters and hash tables; it is not
+ * a cryptographic hash. Input is read 8 bytes at a time (from a byte[], assembled with shifts, without
+ * allocating), and results match other XXH64 implementations for the same bytes and seed.
+ * A CharSequence is hashed as its UTF-8 bytes, so a String key and the same ASCII field of a record
+ * hash alike.
+ * <br>
+ * The static methods hash one range. An instance hashes input given in pieces, like java.util.zip.Checksum;
+ * it is not thread-safe.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         int partition = (int) Long.remainderUnsigned(Hash64.hash(b, off, len), partitions);
+ *         long h = Hash64.hash("CA"); // same as the bytes "CA"
+ *
+ *         Hash64 digest = Hash64.newInstance();
+ *         while ((n = in.read(buf)) &gt; 0) digest.update(buf, 0, n);
+ *         long fileHash = digest.getValue();
+ * </code></pre>
+ */
+public final class Hash64 {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+    private long v1, v2, v3, v4;
+    private long total = 0;
+    private final byte[] pending = new byte[32]; // input not yet in a full 32-byte stripe
+    private int pendingLength = 0;
+
+    public Hash64(long seed) {
+        this.seed = seed;
+        this.reset();
+    }
+
+    public static Hash64 newInstance() {return new Hash64(0);}
+
+    public static long hash(byte[] b, int off, int len) {return hash(b, off, len, 0);}
+
+    /**
+     * @param b    bytes to hash
+     * @param off  where to start
+     * @param len  number of bytes
+     * @param seed seed; different seeds give unrelated hashes
+     * @return XXH64 of b[off, off + len)
+     */
+    public static long hash(byte[] b, int off, int len, long seed) {
+        if (b == null) throw new IllegalArgumentException("null input");
+        checkRange(b.length, off, len);
+        int i = off;
+        final int end = off + len;
+        long h;
+        if (len >= 32) {
+            long a1 = seed + P1 + P2;
+            long a2 = seed + P2;
+            long a3 = seed;
+            long a4 = seed - P1;
+            for (; i + 32 <= end; i += 32) {
+                a1 = round(a1, getLong(b, i));
+                a2 = round(a2, getLong(b, i + 8));
+                a3 = round(a3, getLong(b, i + 16));
+                a4 = round(a4, getLong(b, i + 24));
+            }
+            h = converge(a1, a2, a3, a4);
+        } else {
+            h = seed + P5;
+        }
+        return finish(h + len, b, i, end);
+    }
+
+    // Hashes buf[off, off + len) by absolute index; the buffer's position is not used nor changed
+    public static long hash(ByteBuffer buf, int off, int len) {return hash(buf, off, len, 0L);}
+
+    public static long hash(ByteBuffer buf, int off, int len, long seed) {
+        if (buf == null) throw new IllegalArgumentException("null input");
+        checkRange(buf.limit(), off, len);
+        ByteBuffer d = buf.order() == ByteOrder.LITTLE_ENDIAN ? buf : buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int i = off;
+        final int end = off + len;
+        long h;
+        if (len >= 32) {
+            long a1 = seed + P1 + P2;
+            long a2 = seed + P2;
+            long a3 = seed;
+            long a4 = seed - P1;
+            for (; i + 32 <= end; i += 32) {
+                a1 = round(a1, d.getLong(i));
+                a2 = round(a2, d.getLong(i + 8));
+                a3 = round(a3, d.getLong(i + 16));
+                a4 = round(a4, d.getLong(i + 24));
+            }
+            h = converge(a1, a2, a3, a4);
+        } else {
+            h = seed + P5;
+        }
+        return finish(h + len, d, i, end);
+    }
+
+    public static long hash(CharSequence s) {return hash(s, 0);}
+
+    // Hash of the UTF-8 bytes of s
+    public static long hash(CharSequence s, long seed) {
+        if (s == null) throw new IllegalArgumentException("null input");
+        return new Hash64(seed).update(s).getValue();
+    }
+
+    public Hash64 update(byte[] b, int off, int len) {
+        if (b == null) throw new IllegalArgumentException("null input");
+        checkRange(b.length, off, len);
+        int i = off;
+        final int end = off + len;
+        this.total += len;
+        if (this.pendingLength > 0) { // top up the partial stripe first
+            int n = Math.min(32 - this.pendingLength, len);
+            System.arraycopy(b, i, this.pending, this.pendingLength, n);
+            this.pendingLength += n;
+            i += n;
+            if (this.pendingLength < 32) return this;
+            this.consumePending();
+        }
+        for (; i + 32 <= end; i += 32) {
+            this.v1 = round(this.v1, getLong(b, i));
+            this.v2 = round(this.v2, getLong(b, i + 8));
+            this.v3 = round(this.v3, getLong(b, i + 16));
+            this.v4 = round(this.v4, getLong(b, i + 24));
+        }
+        System.arraycopy(b, i, this.pending, 0, end - i);
+        this.pendingLength = end - i;
+        return this;
+    }
+
+    // Adds buf[off, off + len) by absolute index; the buffer's position is not used nor changed
+    public Hash64 update(ByteBuffer buf, int off, int len) {
+        if (buf == null) throw new IllegalArgumentException("null input");
+        checkRange(buf.limit(), off, len);
+        ByteBuffer d = buf.order() == ByteOrder.LITTLE_ENDIAN ? buf : buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        return this.add(d, off, len);
+    }
+
+    public Hash64 update(byte b) {
+        this.total++;
+        this.pending[this.pendingLength++] = b;
+        if (this.pendingLength == 32) this.consumePending();
+        return this;
+    }
+
+    // Adds the UTF-8 bytes of s; unpaired surrogates are encoded as '?'
+    public Hash64 update(CharSequence s) {
+        if (s == null) throw new IllegalArgumentException("null input");
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                this.update((byte) c);
+            } else if (c < 0x800) {
+                this.update((byte) (0xC0 | c >> 6));
+                this.update((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                this.update((byte) (0xF0 | cp >> 18));
+                this.update((byte) (0x80 | cp >> 12 & 0x3F));
+                this.update((byte) (0x80 | cp >> 6 & 0x3F));
+                this.update((byte) (0x80 | cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                this.update((byte) '?');
+            } else {
+                this.update((byte) (0xE0 | c >> 12));
+                this.update((byte) (0x80 | c >> 6 & 0x3F));
+                this.update((byte) (0x80 | c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    // Hash of everything added since creation or the last reset(); more can still be added
+    public long getValue() {
+        long h = this.total >= 32 ? converge(this.v1, this.v2, this.v3, this.v4) : this.seed + P5;
+        return finish(h + this.total, this.pending, 0, this.pendingLength);
+    }
+
+    public Hash64 reset() {
+        this.v1 = this.seed + P1 + P2;
+        this.v2 = this.seed + P2;
+        this.v3 = this.seed;
+        this.v4 = this.seed - P1;
+        this.total = 0;
+        this.pendingLength = 0;
+        return this;
+    }
+
+    private Hash64 add(ByteBuffer d, int off, int len) {
+        int i = off;
+        final int end = off + len;
+        this.total += len;
+        if (this.pendingLength > 0) { // top up the partial stripe first
+            int n = Math.min(32 - this.pendingLength, len);
+            for (int k = 0; k < n; k++) this.pending[this.pendingLength++] = d.get(i++);
+            if (this.pendingLength < 32) return this;
+            this.consumePending();
+        }
+        for (; i + 32 <= end; i += 32) {
+            this.v1 = round(this.v1, d.getLong(i));
+            this.v2 = round(this.v2, d.getLong(i + 8));
+            this.v3 = round(this.v3, d.getLong(i + 16));
+            this.v4 = round(this.v4, d.getLong(i + 24));
+        }
+        while (i < end) this.pending[this.pendingLength++] = d.get(i++);
+        return this;
+    }
+
+    private void consumePending() {
+        this.v1 = round(this.v1, getLong(this.pending, 0));
+        this.v2 = round(this.v2, getLong(this.pending, 8));
+        this.v3 = round(this.v3, getLong(this.pending, 16));
+        this.v4 = round(this.v4, getLong(this.pending, 24));
+        this.pendingLength = 0;
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long merge(long h, long acc) {
+        return (h ^ round(0, acc)) * P1 + P4;
+    }
+
+    private static long converge(long a1, long a2, long a3, long a4) {
+        long h = Long.rotateLeft(a1, 1) + Long.rotateLeft(a2, 7) + Long.rotateLeft(a3, 12) + Long.rotateLeft(a4, 18);
+        h = merge(h, a1);
+        h = merge(h, a2);
+        h = merge(h, a3);
+        return merge(h, a4);
+    }
+
+    // Mixes in the last 0 to 31 bytes, b[i, end), then avalanches
+    private static long finish(long h, byte[] b, int i, int end) {
+        for (; i + 8 <= end; i += 8) h = Long.rotateLeft(h ^ round(0, getLong(b, i)), 27) * P1 + P4;
+        if (i + 4 <= end) {
+            h = Long.rotateLeft(h ^ getInt(b, i) * P1, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < end; i++) h = Long.rotateLeft(h ^ (b[i] & 0xFFL) * P5, 11) * P1;
+        return avalanche(h);
+    }
+
+    private static long finish(long h, ByteBuffer d, int i, int end) {
+        for (; i + 8 <= end; i += 8) h = Long.rotateLeft(h ^ round(0, d.getLong(i)), 27) * P1 + P4;
+        if (i + 4 <= end) {
+            h = Long.rotateLeft(h ^ (d.getInt(i) & 0xFFFFFFFFL) * P1, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < end; i++) h = Long.rotateLeft(h ^ (d.get(i) & 0xFFL) * P5, 11) * P1;
+        return avalanche(h);
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        return h ^ h >>> 32;
+    }
+
+    private static long getLong(byte[] b, int i) {return ByteSearch.getLong(b, i);}
+
+    // Little-endian unsigned int at b[i, i + 4)
+    private static long getInt(byte[] b, int i) {
+        return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 | (b[i + 2] & 0xFFL) << 16 | (b[i + 3] & 0xFFL) << 24;
+    }
+
+    private static void checkRange(int length, int off, int len) {
+        if (off < 0 || len < 0 || off + len > length)
+            throw new IllegalArgumentException("Invalid range: offset=" + off + ", length=" + len);
+    }
+}
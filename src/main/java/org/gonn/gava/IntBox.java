@@ -0,0 +1,48 @@
+package org.gonn.gava;
+
+import java.util.function.IntUnaryOperator;
+
+// Box for an int without boxing. This is MUTABLE and NOT thread-safe.
+public class IntBox {
+    private int v;
+
+    public IntBox(int v) {this.v = v;}
+
+    public static IntBox of(int v) {return new IntBox(v);}
+
+    public int get() {return this.v;}
+
+    public IntBox set(int v) {
+        this.v = v;
+        return this;
+    }
+
+    public IntBox modify(IntUnaryOperator mod) {
+        if (mod == null) throw new NullPointerException("given mod is null");
+        this.v = mod.applyAsInt(this.v);
+        return this;
+    }
+
+    public IntBox add(int delta) {
+        this.v += delta;
+        return this;
+    }
+
+    public IntBox increment() {
+        this.v++;
+        return this;
+    }
+
+    @Override
+    public int hashCode() {return this.v;}
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof IntBox)) return false;
+        return this.v == ((IntBox) obj).v;
+    }
+
+    @Override
+    public String toString() {return Integer.toString(this.v);}
+}
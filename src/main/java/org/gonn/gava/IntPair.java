@@ -0,0 +1,32 @@
+package org.gonn.gava;
+
+// Pair of ints without boxing
+public class IntPair {
+    private final int first;
+    private final int second;
+
+    public IntPair(int first, int second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public static IntPair of(int first, int second) {return new IntPair(first, second);}
+
+    public int getFirst() {return this.first;}
+
+    public int getSecond() {return this.second;}
+
+    @Override
+    public int hashCode() {return 31 * this.first + this.second;}
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof IntPair)) return false;
+        IntPair other = (IntPair) obj;
+        return this.first == other.first && this.second == other.second;
+    }
+
+    @Override
+    public String toString() {return "(" + this.first + ", " + this.second + ")";}
+}
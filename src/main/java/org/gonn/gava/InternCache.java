@@ -0,0 +1,182 @@
+package org.gonn.gava;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of canonical Strings keyed by their raw bytes, for fields that repeat the same values
+ * (state codes, product codes, status text). A lookup hashes the bytes in place and, on a hit, returns
+ * the cached String without decoding nor allocating. Bytes are decoded as US ASCII unless a charset is given.
+ * <br>
+ * The cache is set-associative: a hash picks a set of WAYS entries, and a miss replaces an entry of
+ * that set chosen by CLOCK (an entry hit since the hand last passed gets a second chance). Memory is
+ * bounded by capacity entries of at most maxLength bytes; longer values are decoded without caching.
+ * <br>
+ * It is thread-safe without locks. Entries are immutable and swapped atomically; two threads missing
+ * the same value at once may both insert it, so the same text can rarely come back as two instances.
+ * With setThreadCache(true), each thread also checks a small direct-mapped cache of its own first.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         InternCache states = new InternCache(4096, 16);
+ *         FixedLayout.TextField state = layout.getText("state");
+ *         FixedRecord.readFile(path, 120, r -&gt; counts.merge(state.get(r, states), 1, Integer::sum));
+ * </code></pre>
+ */
+public class InternCache {
+    public static final int WAYS = 8;
+    private static final int THREAD_CACHE_SIZE = 256;
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final byte[] referenced; // CLOCK bits; racy updates only cost accuracy
+    private final byte[] hands;      // CLOCK hand per set
+    private final int setMask;
+    private final int maxLength;
+    private final Charset charset;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final ThreadLocal<Entry[]> local = ThreadLocal.withInitial(() -> new Entry[THREAD_CACHE_SIZE]);
+    private volatile boolean threadCache = false;
+
+    /**
+     * @param capacity  entries to keep; rounded up to a power of two sets of WAYS entries
+     * @param maxLength longest value to cache, in bytes
+     */
+    public InternCache(int capacity, int maxLength) {
+        this(capacity, maxLength, StandardCharsets.US_ASCII);
+    }
+
+    public InternCache(int capacity, int maxLength, Charset charset) {
+        if (charset == null) throw new IllegalArgumentException("null charset");
+        if (capacity <= 0 || capacity > 1 << 28) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        if (maxLength < 0) throw new IllegalArgumentException("maxLength must be >= 0");
+        int sets = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        sets = Integer.bitCount(sets) == 1 ? sets : Integer.highestOneBit(sets) << 1;
+        this.entries = new AtomicReferenceArray<>(sets * WAYS);
+        this.referenced = new byte[sets * WAYS];
+        this.hands = new byte[sets];
+        this.setMask = sets - 1;
+        this.maxLength = maxLength;
+        this.charset = charset;
+    }
+
+    public static InternCache newInstance() {return new InternCache(8192, 32);}
+
+    /**
+     * Checks a per-thread cache before the shared one. Off by default.
+     *
+     * @param enabled use the per-thread cache or not
+     * @return this cache
+     */
+    public InternCache setThreadCache(boolean enabled) {
+        this.threadCache = enabled;
+        return this;
+    }
+
+    /**
+     * Returns the canonical String for b[off, off + len).
+     *
+     * @param b   source
+     * @param off where the value starts
+     * @param len value length
+     * @return cached or new String
+     */
+    public String get(byte[] b, int off, int len) {
+        if (b == null) throw new IllegalArgumentException("null input");
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IllegalArgumentException("Invalid range: offset=" + off + ", length=" + len);
+        if (len == 0) return "";
+        if (len > this.maxLength) return new String(b, off, len, this.charset);
+
+        int h = hash(b, off, len);
+        Entry[] front = null;
+        int f = 0;
+        if (this.threadCache) {
+            front = this.local.get();
+            f = h & (THREAD_CACHE_SIZE - 1);
+            Entry e = front[f];
+            if (e != null && e.hash == h && e.matches(b, off, len)) {
+                this.hits.increment();
+                return e.value;
+            }
+        }
+
+        int base = (h & this.setMask) * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            Entry e = this.entries.get(i);
+            if (e != null && e.hash == h && e.matches(b, off, len)) {
+                if (this.referenced[i] == 0) this.referenced[i] = 1;
+                if (front != null) front[f] = e;
+                this.hits.increment();
+                return e.value;
+            }
+        }
+
+        this.misses.increment();
+        Entry e = new Entry(h, b, off, len, this.charset);
+        this.entries.set(this.victim(h & this.setMask), e);
+        if (front != null) front[f] = e;
+        return e.value;
+    }
+
+    // CLOCK over the set: an empty slot, or the first entry not referenced since the hand last passed
+    private int victim(int set) {
+        int base = set * WAYS;
+        int hand = this.hands[set];
+        for (int n = 0; n < WAYS * 2; n++) {
+            int i = base + hand;
+            hand = (hand + 1) & (WAYS - 1);
+            if (this.entries.get(i) == null || this.referenced[i] == 0) {
+                this.hands[set] = (byte) hand;
+                return i;
+            }
+            this.referenced[i] = 0;
+        }
+        this.hands[set] = (byte) hand;
+        return base + hand;
+    }
+
+    // Removes all entries; values already handed out stay valid
+    public void clear() {
+        for (int i = 0; i < this.entries.length(); i++) {
+            this.entries.set(i, null);
+            this.referenced[i] = 0;
+        }
+    }
+
+    public long countHits() {return this.hits.sum();}
+
+    public long countMisses() {return this.misses.sum();}
+
+    public int capacity() {return this.entries.length();}
+
+    public Charset getCharset() {return this.charset;}
+
+    private static int hash(byte[] b, int off, int len) {
+        long h = Hash64.hash(b, off, len);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Entry {
+        private final int hash;
+        private final byte[] key;
+        private final String value;
+
+        Entry(int hash, byte[] b, int off, int len, Charset charset) {
+            this.hash = hash;
+            this.key = new byte[len];
+            System.arraycopy(b, off, this.key, 0, len);
+            this.value = new String(this.key, charset);
+        }
+
+        boolean matches(byte[] b, int off, int len) {
+            if (this.key.length != len) return false;
+            for (int i = 0; i < len; i++) {
+                if (this.key[i] != b[off + i]) return false;
+            }
+            return true;
+        }
+    }
+}
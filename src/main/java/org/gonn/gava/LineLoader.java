@@ -0,0 +1,311 @@
+package org.gonn.gava;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Reads lines of a file through memory-mapped windows, on one thread or in parallel.
+ * Lines end with '\n' (a '\r' before it is dropped) and are numbered from 1. The Line handed to the
+ * consumer is a view over a reusable buffer: use array(), offset() and length() for the raw bytes,
+ * or toString() to decode it only when a String is needed.
+ * <br>
+ * readFileParallel() splits the file into chunks at line boundaries. To number lines, it first counts
+ * newlines of each chunk in parallel on the mapped pages, and the line number of each chunk starts
+ * after the lines of the chunks before it.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         long errors = LineLoader.readFileParallel(path, () -&gt; LongBox.of(0),
+ *                 (count, line) -&gt; { if (line.startsWith("ERROR")) count.increment(); },
+ *                 (a, b) -&gt; a.add(b.get()), false).get();
+ * </code></pre>
+ */
+public class LineLoader {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024; // bytes scanned at a time; grows for longer lines
+
+    private LineLoader() {}
+
+    /**
+     * A line as a range of a shared buffer. It is reused for every line, so copy what needs to be kept.
+     */
+    public static final class Line {
+        private byte[] data;
+        private int offset;
+        private int length;
+        private long number;
+
+        public long getNumber() {return this.number;}
+
+        public byte[] array() {return this.data;}
+
+        public int offset() {return this.offset;}
+
+        public int length() {return this.length;}
+
+        public boolean startsWith(String prefix) {
+            if (prefix.length() > this.length) return false;
+            for (int i = 0; i < prefix.length(); i++) {
+                if ((this.data[this.offset + i] & 0xFF) != prefix.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        public String toString(Charset charset) {return new String(this.data, this.offset, this.length, charset);}
+
+        // Decodes as UTF-8
+        @Override
+        public String toString() {return this.toString(StandardCharsets.UTF_8);}
+    }
+
+    /**
+     * @param path     file to read
+     * @param consumer how to process each line
+     * @return number of lines
+     * @throws IOException any IO issues
+     */
+    public static long readFile(Path path, Consumer<Line> consumer) throws IOException {
+        if (path == null || consumer == null) throw new IllegalArgumentException("null input");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readRange(channel, 0, channel.size(), 0, consumer);
+        }
+    }
+
+    public static long readInputStream(InputStream in, Consumer<Line> consumer) throws IOException {
+        if (in == null || consumer == null) throw new IllegalArgumentException("null input");
+        return read(in::read, 0, consumer);
+    }
+
+    /**
+     * Processes lines of a file on an executor, a chunk at a time, and combines per-chunk results.
+     * Each chunk gets its own accumulator, so the consumer does not need to be thread-safe.
+     *
+     * @param path      file to read
+     * @param supplier  creates an accumulator per chunk
+     * @param consumer  adds a line to an accumulator
+     * @param combiner  merges two accumulators
+     * @param ordered   combine in file order; otherwise in completion order
+     * @param executor  where to run the chunks
+     * @param chunks    number of chunks to split the file into
+     * @param <A>       accumulator type
+     * @return combined accumulator
+     * @throws IOException any IO issues
+     */
+    public static <A> A readFileParallel(Path path, Supplier<A> supplier, BiConsumer<A, Line> consumer,
+                                         BinaryOperator<A> combiner, boolean ordered, Executor executor,
+                                         int chunks) throws IOException {
+        if (path == null || supplier == null || consumer == null || combiner == null || executor == null)
+            throw new IllegalArgumentException("null input");
+        if (chunks <= 0) throw new IllegalArgumentException("chunks must be > 0");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) return supplier.get();
+            long[] bounds = split(channel, size, chunks);
+            int n = bounds.length - 1;
+
+            // Pass 1: newlines per chunk, for the line number each chunk starts after
+            List<Callable<Long>> counts = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                final long from = bounds[i];
+                final long to = bounds[i + 1];
+                counts.add(() -> countLines(channel, from, to));
+            }
+            long[] firstLine = new long[n];
+            List<Long> counted = runAll(counts, executor, true, null);
+            for (int i = 1; i < n; i++) firstLine[i] = firstLine[i - 1] + counted.get(i - 1);
+
+            // Pass 2: lines
+            List<Callable<A>> tasks = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                final long from = bounds[i];
+                final long to = bounds[i + 1];
+                final long first = firstLine[i];
+                tasks.add(() -> {
+                    A acc = supplier.get();
+                    readRange(channel, from, to, first, line -> consumer.accept(acc, line));
+                    return acc;
+                });
+            }
+            A out = null;
+            for (A acc : runAll(tasks, executor, ordered, combiner)) out = acc;
+            return out;
+        }
+    }
+
+    public static <A> A readFileParallel(Path path, Supplier<A> supplier, BiConsumer<A, Line> consumer,
+                                         BinaryOperator<A> combiner, boolean ordered) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        return readFileParallel(path, supplier, consumer, combiner, ordered, pool, pool.getParallelism() * 4);
+    }
+
+    // Chunk boundaries: each one right after a newline, so no line spans two chunks
+    private static long[] split(FileChannel channel, long size, int chunks) throws IOException {
+        int n = (int) Math.min(chunks, Math.max(1, size / DEFAULT_BUFFER_SIZE));
+        long[] out = new long[n + 1];
+        int count = 1; // out[0] = 0
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        for (int i = 1; i < n; i++) {
+            long p = Math.max(size / n * i, out[count - 1]);
+            long boundary = size;
+            while (p < size) { // first byte after a newline at or after p - 1
+                probe.clear();
+                int read = channel.read(probe, p - 1);
+                if (read <= 0) break;
+                int k = ByteSearch.indexOf(probe.array(), 0, read, (byte) '\n');
+                if (k >= 0) {
+                    boundary = p + k;
+                    break;
+                }
+                p += read;
+            }
+            if (boundary >= size) break;
+            if (boundary > out[count - 1]) out[count++] = boundary;
+        }
+        out[count++] = size;
+        return Arrays.copyOf(out, count);
+    }
+
+    // Lines in [from, to); only the last chunk of a file may end without a newline.
+    // Newlines are counted on the mapped windows in place, without copying them to the heap.
+    private static long countLines(FileChannel channel, long from, long to) throws IOException {
+        long lines = 0;
+        byte last = '\n';
+        for (long position = from; position < to; ) {
+            int size = (int) Math.min(FixedRecord.DEFAULT_WINDOW_SIZE, to - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            lines += ByteSearch.count(window, 0, size, (byte) '\n');
+            last = window.get(size - 1);
+            position += size;
+        }
+        return lines + (last == '\n' ? 0 : 1);
+    }
+
+    static long readRange(FileChannel channel, long from, long to, long firstLine, Consumer<Line> consumer)
+            throws IOException {
+        return read(mapped(channel, from, to), firstLine, consumer);
+    }
+
+    // Reads through memory-mapped windows of [from, to)
+    private static Source mapped(FileChannel channel, long from, long to) {
+        return new Source() {
+            private long position = from;
+            private MappedByteBuffer window = null;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (this.position >= to) return -1;
+                if (this.window == null || !this.window.hasRemaining()) {
+                    long size = Math.min(FixedRecord.DEFAULT_WINDOW_SIZE, to - this.position);
+                    this.window = channel.map(FileChannel.MapMode.READ_ONLY, this.position, size);
+                }
+                int n = Math.min(len, this.window.remaining());
+                this.window.get(b, off, n);
+                this.position += n;
+                return n;
+            }
+        };
+    }
+
+    private interface Source {
+        int read(byte[] b, int off, int len) throws IOException;
+    }
+
+    private static long read(Source source, long firstLine, Consumer<Line> consumer) throws IOException {
+        Line line = new Line();
+        byte[] buf = new byte[DEFAULT_BUFFER_SIZE];
+        long number = firstLine;
+        int start = 0;    // start of the current line
+        int scanned = 0;  // bytes before this have been searched for '\n'
+        int end = 0;      // bytes in buf
+        while (true) {
+            if (end == buf.length) {
+                if (start > 0) { // keep the partial line only
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    scanned -= start;
+                    end -= start;
+                    start = 0;
+                } else {
+                    buf = Arrays.copyOf(buf, buf.length * 2); // line longer than the buffer
+                }
+            }
+            int n = source.read(buf, end, buf.length - end);
+            if (n < 0) break;
+            end += n;
+
+            int nl;
+            while ((nl = ByteSearch.indexOf(buf, scanned, end, (byte) '\n')) >= 0) {
+                int stop = (nl > start && buf[nl - 1] == '\r') ? nl - 1 : nl;
+                emit(line, buf, start, stop, ++number, consumer);
+                start = nl + 1;
+                scanned = start;
+            }
+            scanned = end;
+        }
+        if (start < end) {
+            int stop = buf[end - 1] == '\r' ? end - 1 : end;
+            emit(line, buf, start, stop, ++number, consumer);
+        }
+        return number - firstLine;
+    }
+
+    private static void emit(Line line, byte[] buf, int start, int stop, long number, Consumer<Line> consumer) {
+        line.data = buf;
+        line.offset = start;
+        line.length = stop - start;
+        line.number = number;
+        consumer.accept(line);
+    }
+
+    // Runs the tasks and returns their results, in task order if ordered; with a combiner, returns
+    // only the combined result
+    private static <T> List<T> runAll(List<Callable<T>> tasks, Executor executor, boolean ordered,
+                                      BinaryOperator<T> combiner) throws IOException {
+        CompletionService<T> service = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) futures.add(service.submit(task));
+        try {
+            List<T> out = new ArrayList<>(tasks.size());
+            T combined = null;
+            for (int i = 0; i < tasks.size(); i++) {
+                T t = ordered ? futures.get(i).get() : service.take().get();
+                if (combiner == null) out.add(t);
+                else combined = (combined == null) ? t : combiner.apply(combined, t);
+            }
+            if (combiner != null) out.add(combined);
+            return out;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("readFileParallel() interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            for (Future<T> f : futures) f.cancel(true);
+        }
+    }
+}
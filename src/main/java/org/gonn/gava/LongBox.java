@@ -0,0 +1,48 @@
+package org.gonn.gava;
+
+import java.util.function.LongUnaryOperator;
+
+// Box for a long without boxing. This is MUTABLE and NOT thread-safe.
+public class LongBox {
+    private long v;
+
+    public LongBox(long v) {this.v = v;}
+
+    public static LongBox of(long v) {return new LongBox(v);}
+
+    public long get() {return this.v;}
+
+    public LongBox set(long v) {
+        this.v = v;
+        return this;
+    }
+
+    public LongBox modify(LongUnaryOperator mod) {
+        if (mod == null) throw new NullPointerException("given mod is null");
+        this.v = mod.applyAsLong(this.v);
+        return this;
+    }
+
+    public LongBox add(long delta) {
+        this.v += delta;
+        return this;
+    }
+
+    public LongBox increment() {
+        this.v++;
+        return this;
+    }
+
+    @Override
+    public int hashCode() {return Long.hashCode(this.v);}
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof LongBox)) return false;
+        return this.v == ((LongBox) obj).v;
+    }
+
+    @Override
+    public String toString() {return Long.toString(this.v);}
+}
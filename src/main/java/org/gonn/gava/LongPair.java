@@ -0,0 +1,32 @@
+package org.gonn.gava;
+
+// Pair of longs without boxing
+public class LongPair {
+    private final long first;
+    private final long second;
+
+    public LongPair(long first, long second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public static LongPair of(long first, long second) {return new LongPair(first, second);}
+
+    public long getFirst() {return this.first;}
+
+    public long getSecond() {return this.second;}
+
+    @Override
+    public int hashCode() {return 31 * Long.hashCode(this.first) + Long.hashCode(this.second);}
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof LongPair)) return false;
+        LongPair other = (LongPair) obj;
+        return this.first == other.first && this.second == other.second;
+    }
+
+    @Override
+    public String toString() {return "(" + this.first + ", " + this.second + ")";}
+}
@@ -1,46 +1,558 @@
 package org.gonn.gava;
 
-import java.util.Deque;
-import java.util.LinkedList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
-public class ObjectPool<T> {
-    private final Deque<T> pool;
+/**
+ * Thread-safe object pool. Pooled objects are kept in striped array stacks; each thread starts at its
+ * own stripe and only moves to other stripes when its own is empty, full or busy. A stripe is guarded by
+ * a try-lock that never blocks, so get() and release() do not allocate nor wait on a monitor.
+ * At most poolSize objects are kept.
+ * <br>
+ * With a maxPoolSize above poolSize the pool is adaptive: when more than 1 in 10 releases are discarded
+ * over a short window, the capacity grows by half, up to maxPoolSize. With setIdleTimeout(), trim()
+ * drops objects that sat in the pool longer than the timeout and gives that room back, down to poolSize.
+ * trim() can be called by hand or every few seconds by a shared daemon thread with startTrimmer().
+ * <br>
+ * Hits, misses, discards and in-flight objects are counted with LongAdders and can be published over
+ * JMX with register(). Borrow-to-release durations are recorded only after setBorrowTiming(true). The
+ * borrow time is kept next to the object in a fixed table, so an object can be released by any thread and
+ * in any order; while more than BORROW_SLOTS objects are out at once, the extra ones are not timed.
+ */
+public class ObjectPool<T> implements ObjectPoolMXBean {
+    public static final int BORROW_SLOTS = 4096; // objects timed at once with setBorrowTiming(true)
+    private static final int MAX_ATTEMPTS = 8; // passes over busy stripes before creating/discarding
+    private static final long ADAPT_WINDOW_NANOS = 250_000_000L; // discard rate is checked at most this often
+
+    private final Stripe[] stripes;
+    private final int mask;
     private final Supplier<T> objectFactory;
     private final Consumer<T> initializer;
     private final int poolSize;
-    private int objectCreated = 0;
-    private int objectDiscarded = 0;
+    private final int maxPoolSize;
+    private volatile int capacity;
+    private volatile long idleNanos = 0;
+    private volatile long windowStart = System.nanoTime();
+    private long windowReleases = 0; // guarded by this
+    private long windowDiscards = 0; // guarded by this
+    private long trimDiscards = 0;   // guarded by this
+    private ScheduledFuture<?> trimmer = null;
+    private final LongAdder objectCreated = new LongAdder(); // misses
+    private final LongAdder objectDiscarded = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final Histogram borrowTime = new Histogram();
+    private volatile Borrows borrows = null; // borrow times, while borrow timing is enabled
+    private volatile String name = null;
+    private ObjectName objectName = null;
 
     public ObjectPool(Supplier<T> objectFactory, Consumer<T> initializer, int poolSize) {
-        this.pool = new LinkedList<>();
+        this(objectFactory, initializer, poolSize, poolSize);
+    }
+
+    /**
+     * Adaptive pool: starts with room for poolSize objects and grows up to maxPoolSize when too many
+     * objects are discarded.
+     *
+     * @param objectFactory creates objects on a miss
+     * @param initializer   resets objects on release; can be null
+     * @param poolSize      initial and minimum capacity
+     * @param maxPoolSize   maximum capacity
+     */
+    public ObjectPool(Supplier<T> objectFactory, Consumer<T> initializer, int poolSize, int maxPoolSize) {
+        if (maxPoolSize < poolSize) throw new IllegalArgumentException("maxPoolSize must be >= poolSize");
         this.objectFactory = objectFactory;
         this.initializer = initializer;
-        this.poolSize = poolSize;
+        this.poolSize = Math.max(0, poolSize);
+        this.maxPoolSize = Math.max(0, maxPoolSize);
+
+        // Power of two stripes, about two per CPU (at least 4), but no more than objects to pool
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int n = Integer.highestOneBit(Math.max(1, Math.min(this.maxPoolSize, Math.max(4, cpus * 2))));
+        this.stripes = new Stripe[n];
+        this.mask = n - 1;
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new Stripe(share(this.maxPoolSize, n, i));
+        }
+        this.setCapacity(this.poolSize);
     }
 
-    public synchronized T get() {
-        if (this.pool.isEmpty()) {
-            this.objectCreated++;
-            return this.objectFactory.get();
+    @SuppressWarnings("unchecked")
+    public T get() {
+        int home = home();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            boolean busy = false;
+            for (int i = 0; i < this.stripes.length; i++) {
+                Stripe s = this.stripes[(home + i) & this.mask];
+                if (s.size == 0) continue;
+                Object o = s.pop();
+                if (o != null) {
+                    this.hits.increment();
+                    this.borrowed(o);
+                    return (T) o;
+                }
+                busy = true;
+            }
+            if (!busy) break; // every stripe is empty
+            Thread.yield(); // let the holder of a busy stripe finish
         }
-        return this.pool.pop();
+        this.objectCreated.increment();
+        T out = this.objectFactory.get();
+        this.borrowed(out);
+        return out;
     }
 
-    public synchronized void release(T object) {
+    public void release(T object) {
         if (object == null) return;
-        if (this.pool.size() < this.poolSize) {
-            this.initializer.accept(object);
-            this.pool.push(object);
-        } else {
-            this.objectDiscarded++;
+        this.released(object);
+        // Reset before taking a stripe, so a slow initializer does not hold the stripe's try-lock
+        if (this.initializer != null) this.initializer.accept(object);
+        int home = home();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            boolean busy = false;
+            for (int i = 0; i < this.stripes.length; i++) {
+                int r = this.stripes[(home + i) & this.mask].push(object);
+                if (r == Stripe.PUSHED) return;
+                if (r == Stripe.BUSY) busy = true;
+            }
+            if (!busy) break; // every stripe is full
+            Thread.yield();
+        }
+        this.objectDiscarded.increment();
+        if (this.capacity < this.maxPoolSize && System.nanoTime() - this.windowStart >= ADAPT_WINDOW_NANOS) {
+            this.adapt();
+        }
+    }
+
+    public int size() {
+        int out = 0;
+        for (Stripe s : this.stripes) out += s.size;
+        return out;
+    }
+
+    public int countCreated() {return this.objectCreated.intValue();}
+
+    public int countDiscarded() {return this.objectDiscarded.intValue();}
+
+    // ================================================================================
+    // Sizing
+    // ================================================================================
+
+    /**
+     * Objects idle in the pool for longer than this are dropped by trim(). Zero (the default) keeps
+     * them forever. While enabled, each release() also reads System.nanoTime(), and a release time
+     * is kept per pooled object.
+     *
+     * @param idleMillis idle timeout in milliseconds; 0 to disable
+     * @return this pool
+     */
+    public ObjectPool<T> setIdleTimeout(long idleMillis) {
+        if (idleMillis < 0) throw new IllegalArgumentException("idleMillis must be >= 0");
+        if (idleMillis > 0 && this.idleNanos == 0) {
+            long now = System.nanoTime(); // objects pooled so far count as idle from now on
+            for (Stripe s : this.stripes) s.touch(now);
+        }
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        if (idleMillis == 0) {
+            for (Stripe s : this.stripes) s.untouch();
+        }
+        return this;
+    }
+
+    /**
+     * Drops objects that have been idle for longer than the idle timeout. If no object was discarded
+     * since the previous trim(), the capacity of an adaptive pool shrinks by as many objects, but not
+     * below poolSize.
+     *
+     * @return number of objects dropped
+     */
+    public synchronized int trim() {
+        long idle = this.idleNanos;
+        if (idle == 0) return 0;
+        long cutoff = System.nanoTime() - idle;
+        int out = 0;
+        for (Stripe s : this.stripes) out += s.trim(cutoff);
+        this.evicted.add(out);
+
+        long discards = this.objectDiscarded.sum();
+        if (out > 0 && discards == this.trimDiscards && this.capacity > this.poolSize) {
+            this.setCapacity(Math.max(this.poolSize, this.capacity - out));
+        }
+        this.trimDiscards = discards;
+        return out;
+    }
+
+    /**
+     * Calls trim() periodically on a daemon thread shared by all pools. Call stopTrimmer() before
+     * dropping the pool, otherwise the pool stays reachable from the scheduler.
+     *
+     * @param periodMillis time between trims in milliseconds
+     * @return this pool
+     */
+    public synchronized ObjectPool<T> startTrimmer(long periodMillis) {
+        if (periodMillis <= 0) throw new IllegalArgumentException("periodMillis must be > 0");
+        this.stopTrimmer();
+        this.trimmer = Trimmer.EXECUTOR.scheduleWithFixedDelay(this::trim, periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public synchronized void stopTrimmer() {
+        if (this.trimmer == null) return;
+        this.trimmer.cancel(false);
+        this.trimmer = null;
+    }
+
+    // Grows the capacity by half when more than 1 in 10 releases of the last window were discarded
+    private synchronized void adapt() {
+        long now = System.nanoTime();
+        if (now - this.windowStart < ADAPT_WINDOW_NANOS) return;
+        long releases = this.hits.sum() + this.objectCreated.sum() - this.inFlight.sum();
+        long discards = this.objectDiscarded.sum();
+        long r = releases - this.windowReleases;
+        long d = discards - this.windowDiscards;
+        this.windowReleases = releases;
+        this.windowDiscards = discards;
+        this.windowStart = now;
+        if (d * 10 > r) {
+            int c = this.capacity;
+            this.setCapacity((int) Math.min(this.maxPoolSize, Math.max(c + this.stripes.length, c + (long) c / 2)));
         }
     }
 
-    public synchronized int size() {return this.pool.size();}
+    // Spreads the capacity over the stripes the same way maxPoolSize was, so a limit never exceeds its stripe
+    private void setCapacity(int capacity) {
+        int n = this.stripes.length;
+        for (int i = 0; i < n; i++) this.stripes[i].limit = share(capacity, n, i);
+        this.capacity = capacity;
+    }
+
+    private static int share(int total, int stripes, int i) {
+        return total / stripes + (i < total % stripes ? 1 : 0);
+    }
+
+    // ================================================================================
+    // Metrics
+    // ================================================================================
+
+    /**
+     * Records borrow-to-release durations. Each get() then also reads System.nanoTime(), so it is
+     * off by default.
+     *
+     * @param enabled record or not
+     * @return this pool
+     */
+    public synchronized ObjectPool<T> setBorrowTiming(boolean enabled) {
+        if (!enabled) {
+            this.borrows = null;
+        } else if (this.borrows == null) {
+            this.borrows = new Borrows(BORROW_SLOTS);
+        }
+        return this;
+    }
+
+    /**
+     * Publishes the metrics as an MBean named org.gonn.gava:type=ObjectPool,name=[name].
+     *
+     * @param name pool name, unique within the JVM
+     * @return this pool
+     */
+    public synchronized ObjectPool<T> register(String name) {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException("name cannot be null/empty");
+        this.unregister();
+        try {
+            ObjectName on = new ObjectName("org.gonn.gava:type=ObjectPool,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            this.objectName = on;
+            this.name = name;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Failed to register ObjectPool " + name, e);
+        }
+        return this;
+    }
+
+    public synchronized void unregister() {
+        if (this.objectName == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(this.objectName)) server.unregisterMBean(this.objectName);
+        } catch (JMException e) {
+            Stu.log("ObjectPool.unregister(): " + e);
+        }
+        this.objectName = null;
+    }
+
+    private void borrowed(Object o) {
+        this.inFlight.increment();
+        Borrows b = this.borrows;
+        if (b != null) b.add(o, System.nanoTime());
+    }
+
+    private void released(Object o) {
+        this.inFlight.decrement();
+        Borrows b = this.borrows;
+        if (b == null) return;
+        long start = b.remove(o);
+        if (start != Borrows.NONE) this.borrowTime.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public String getName() {return this.name;}
+
+    @Override
+    public int getPoolSize() {return this.poolSize;}
+
+    @Override
+    public int getMaxPoolSize() {return this.maxPoolSize;}
+
+    @Override
+    public int getCapacity() {return this.capacity;}
+
+    @Override
+    public int getSize() {return this.size();}
+
+    @Override
+    public long getHits() {return this.hits.sum();}
+
+    @Override
+    public long getMisses() {return this.objectCreated.sum();}
+
+    @Override
+    public long getDiscards() {return this.objectDiscarded.sum();}
+
+    // release() of an object that did not come from get() is counted too, so this is floored at zero
+    @Override
+    public long getInFlight() {return Math.max(0, this.inFlight.sum());}
 
-    public synchronized int countCreated() {return this.objectCreated;}
+    @Override
+    public long getEvictions() {return this.evicted.sum();}
 
-    public synchronized int countDiscarded() {return this.objectDiscarded;}
+    @Override
+    public double getHitRatio() {
+        long h = this.hits.sum();
+        long total = h + this.objectCreated.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public long getBorrowTimeCount() {return this.borrowTime.count();}
+
+    @Override
+    public long getBorrowTimeP50Nanos() {return this.borrowTime.percentile(0.50);}
+
+    @Override
+    public long getBorrowTimeP99Nanos() {return this.borrowTime.percentile(0.99);}
+
+    @Override
+    public long getBorrowTimeMaxNanos() {return this.borrowTime.percentile(1.0);}
+
+    @Override
+    public void resetBorrowTime() {this.borrowTime.reset();}
+
+    private int home() {
+        return (int) Thread.currentThread().getId() & this.mask;
+    }
+
+    // Lazily started daemon thread that runs trim() for all pools with a trimmer
+    private static final class Trimmer {
+        static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "gava-pool-trimmer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        static {
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    // Power of two buckets: bucket i holds values in [2^i, 2^(i+1)); percentiles are bucket upper bounds
+    private static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        void record(long value) {
+            this.buckets.incrementAndGet(value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value) - 1);
+        }
+
+        long count() {
+            long out = 0;
+            for (int i = 0; i < 64; i++) out += this.buckets.get(i);
+            return out;
+        }
+
+        long percentile(double p) {
+            long total = this.count();
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(total * p));
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += this.buckets.get(i);
+                if (seen >= rank) return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for (int i = 0; i < 64; i++) this.buckets.set(i, 0);
+        }
+    }
+
+    // Borrow times of objects out of the pool, by identity: open addressing over a few slots from the
+    // identity hash, without allocating. Objects that find no free slot, or were borrowed before timing
+    // was enabled, are not timed.
+    private static final class Borrows {
+        static final long NONE = Long.MIN_VALUE;
+        private static final int PROBES = 16;
+
+        private final AtomicReferenceArray<Object> objects;
+        private final AtomicLongArray starts;
+        private final int mask;
+
+        Borrows(int slots) {
+            this.objects = new AtomicReferenceArray<>(slots);
+            this.starts = new AtomicLongArray(slots);
+            this.mask = slots - 1;
+        }
+
+        void add(Object o, long now) {
+            int i = System.identityHashCode(o) & this.mask;
+            for (int n = 0; n < PROBES; n++, i = (i + 1) & this.mask) {
+                if (this.objects.get(i) == null && this.objects.compareAndSet(i, null, o)) {
+                    this.starts.set(i, now);
+                    return;
+                }
+            }
+        }
+
+        // Borrow time of o, and frees its slot; NONE if o is not timed
+        long remove(Object o) {
+            int i = System.identityHashCode(o) & this.mask;
+            for (int n = 0; n < PROBES; n++, i = (i + 1) & this.mask) {
+                if (this.objects.get(i) == o) {
+                    long start = this.starts.get(i);
+                    this.objects.set(i, null);
+                    return start;
+                }
+            }
+            return NONE;
+        }
+    }
+
+    // Array stack guarded by a non-blocking try-lock (the AtomicInteger value: 0 free, 1 taken).
+    // With an idle timeout, release times are kept next to the objects; the bottom of the stack is the oldest.
+    // The arrays start small and double as objects are pushed, up to the stripe's share of maxPoolSize.
+    @SuppressWarnings("serial")
+    private static final class Stripe extends AtomicInteger {
+        static final int PUSHED = 0;
+        static final int FULL = 1;
+        static final int BUSY = 2;
+        static final int INITIAL_LENGTH = 16;
+
+        private final int maxLength;
+        private Object[] items;
+        private long[] times = null; // release times, only while an idle timeout is set
+        private volatile int size = 0;  // read without the lock as a hint
+        private volatile int limit = 0; // current capacity, at most maxLength
+
+        // Padding so that stripes used by different threads do not share a cache line
+        @SuppressWarnings("unused")
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        Stripe(int maxLength) {
+            this.maxLength = maxLength;
+            this.items = new Object[Math.min(maxLength, INITIAL_LENGTH)];
+        }
+
+        Object pop() {
+            if (this.size == 0 || !this.compareAndSet(0, 1)) return null;
+            try {
+                int n = this.size;
+                if (n == 0) return null;
+                Object o = this.items[--n];
+                this.items[n] = null;
+                this.size = n;
+                return o;
+            } finally {
+                this.set(0);
+            }
+        }
+
+        int push(Object object) {
+            if (this.size >= this.limit) return FULL;
+            if (!this.compareAndSet(0, 1)) return BUSY;
+            try {
+                int n = this.size;
+                if (n >= this.limit) return FULL;
+                if (n == this.items.length) this.grow();
+                this.items[n] = object;
+                if (this.times != null) this.times[n] = System.nanoTime(); // under the lock, like touch()
+                this.size = n + 1;
+                return PUSHED;
+            } finally {
+                this.set(0);
+            }
+        }
+
+        // Drops objects released before cutoff; waits for the lock since it is not on a hot path
+        int trim(long cutoff) {
+            if (this.size == 0) return 0;
+            this.lock();
+            try {
+                if (this.times == null) return 0;
+                int n = this.size;
+                int k = 0;
+                while (k < n && this.times[k] - cutoff < 0) k++;
+                if (k == 0) return 0;
+                System.arraycopy(this.items, k, this.items, 0, n - k);
+                System.arraycopy(this.times, k, this.times, 0, n - k);
+                Arrays.fill(this.items, n - k, n, null);
+                this.size = n - k;
+                return k;
+            } finally {
+                this.set(0);
+            }
+        }
+
+        void touch(long now) {
+            this.lock();
+            try {
+                if (this.times == null) this.times = new long[this.items.length];
+                Arrays.fill(this.times, 0, this.size, now);
+            } finally {
+                this.set(0);
+            }
+        }
+
+        void untouch() {
+            this.lock();
+            try {
+                this.times = null;
+            } finally {
+                this.set(0);
+            }
+        }
+
+        private void grow() {
+            int length = (int) Math.min(this.maxLength, Math.max(INITIAL_LENGTH, this.items.length * 2L));
+            this.items = Arrays.copyOf(this.items, length);
+            if (this.times != null) this.times = Arrays.copyOf(this.times, length);
+        }
+
+        private void lock() {
+            while (!this.compareAndSet(0, 1)) Thread.yield();
+        }
+    }
 }
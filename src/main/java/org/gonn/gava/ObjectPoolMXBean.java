@@ -0,0 +1,47 @@
+package org.gonn.gava;
+
+/**
+ * JMX view of an ObjectPool; see ObjectPool.register().
+ */
+public interface ObjectPoolMXBean {
+    String getName();
+
+    // Initial and minimum capacity
+    int getPoolSize();
+
+    int getMaxPoolSize();
+
+    // Current capacity; only differs from getPoolSize() for adaptive pools
+    int getCapacity();
+
+    // Objects currently in the pool
+    int getSize();
+
+    // get() served from the pool
+    long getHits();
+
+    // get() that had to create a new object
+    long getMisses();
+
+    // release() that dropped the object because the pool was full
+    long getDiscards();
+
+    // Objects handed out by get() and not released yet
+    long getInFlight();
+
+    // Idle objects dropped by trim()
+    long getEvictions();
+
+    double getHitRatio();
+
+    // Borrow-to-release durations; zero unless borrow timing is enabled
+    long getBorrowTimeCount();
+
+    long getBorrowTimeP50Nanos();
+
+    long getBorrowTimeP99Nanos();
+
+    long getBorrowTimeMaxNanos();
+
+    void resetBorrowTime();
+}
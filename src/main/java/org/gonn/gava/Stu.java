@@ -5,6 +5,10 @@ import java.io.InputStreamReader;
 import java.io.InputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 /**
  * Static Utils (STU) is a collection of static methods that are frequently used.
@@ -16,7 +20,7 @@ public class Stu {
     public static final long EPOCH_STARTED = System.currentTimeMillis();  // this will be used for log
     public static boolean VERBOSE_MODE = System.getProperty("VERBOSE_MODE", null) != null;
     // 0 for UTC, -5 for CDT, -6 for CST
-    public static int OFFSET_HR = Stu.parseInt(System.getProperty("OFFSET_HR",null), 0);
+    public static int OFFSET_HR = validOffsetHr(Stu.parseInt(System.getProperty("OFFSET_HR",null), 0));
 
     public static final long SECOND = 1000;
     public static final long MINUTE = SECOND * 60;
@@ -28,6 +32,9 @@ public class Stu {
     public static final int[] EMPTY_INT_ARRAY = new int[]{};
 
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray(); // This is used for hex conversion
+    private static final long[] POW10 = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+            1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+            1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L};
 
     private Stu() {} // Stu is a collection of static methods. Therefore, disable the constructor.
 
@@ -128,9 +135,21 @@ public class Stu {
     // Array
     // ================================================================================
 
+    // For many fields of the same line, Tokenizer finds all delimiters in one pass
     public static String getNth(String s, char delim, int index) {
         if (s == null) return null;
-        int n = (index < 0) ? index + count(s, delim) + 1 : index; // reverse
+        if (index < 0) { // reverse: scan from the end
+            int end = s.length();
+            int k = -index - 1;
+            for (int i = end - 1; i >= 0; --i) {
+                if (s.charAt(i) == delim) {
+                    if (k-- == 0) return s.substring(i + 1, end);
+                    end = i;
+                }
+            }
+            return k == 0 ? s.substring(0, end) : null;
+        }
+        int n = index;
         int end = -1;
         int idx = 0;
         int start;
@@ -274,16 +293,14 @@ public class Stu {
     }
 
     public static int getDigits(int n) {
-        n = n < 0 ? -n : n;
         int out = 1;
-        while ((n = n / 10) > 0) out++;
+        while ((n = n / 10) != 0) out++; // also right for MIN_VALUE, which has no positive counterpart
         return out;
     }
 
     public static int getDigits(long n) {
-        n = n < 0 ? -n : n;
         int out = 1;
-        while ((n = n / 10) > 0) out++;
+        while ((n = n / 10) != 0) out++;
         return out;
     }
 
@@ -328,12 +345,50 @@ public class Stu {
         }
     }
 
+    // Log lines start with an ISO-8601 timestamp at OFFSET_HR
     public static void log(String msg) {
-        if (VERBOSE_MODE) System.out.println(epochToString() + "  " + msg);
+        if (!VERBOSE_MODE) return;
+        AsyncLogger l = logger;
+        if (l != null) l.info(msg);
+        else System.out.println(logLine(msg));
     }
 
     public static void log(Supplier<String> msg) {
-        if (VERBOSE_MODE) System.out.println(epochToString() + "  " + msg.get());
+        if (!VERBOSE_MODE) return;
+        AsyncLogger l = logger;
+        if (l != null) l.info(msg);
+        else System.out.println(logLine(msg.get()));
+    }
+
+    /**
+     * Sends log() to an AsyncLogger at INFO level instead of printing on the caller's thread.
+     * VERBOSE_MODE still applies.
+     *
+     * @param asyncLogger logger to use; null to print to System.out again
+     */
+    public static void setLogger(AsyncLogger asyncLogger) {
+        logger = asyncLogger;
+    }
+
+    private static volatile AsyncLogger logger = null;
+    private static volatile TimestampFormatter logTime = null;
+    private static final ThreadLocal<StringBuilder> LOG_LINE = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    // An offset outside of -23 to 23 is logged as UTC rather than failing the log call
+    static int validOffsetHr(int offsetHr) {
+        return offsetHr >= -23 && offsetHr <= 23 ? offsetHr : 0;
+    }
+
+    private static String logLine(String msg) {
+        TimestampFormatter f = logTime;
+        int offsetHr = validOffsetHr(OFFSET_HR);
+        if (f == null || f.getOffsetHr() != offsetHr) logTime = f = new TimestampFormatter(offsetHr);
+        StringBuilder sb = LOG_LINE.get();
+        sb.setLength(0);
+        f.format(System.currentTimeMillis(), sb).append("  ").append(msg);
+        String out = sb.toString();
+        if (sb.capacity() > 8192) LOG_LINE.remove(); // do not keep a huge message around
+        return out;
     }
 
     public static <T> T mustGet(T t, T fallback) {
@@ -395,6 +450,195 @@ public class Stu {
         }
     }
 
+    // ================================================================================
+    // Parsing ranges of byte[] and CharSequence
+    // ================================================================================
+    // Surrounding spaces are ignored, a leading '-' or '+' is accepted, and values that do not fit are
+    // rejected. The versions with a fallback return it for bad input instead of throwing, so a bad
+    // field costs no stack trace. A decimal with a scale is parsed as an unscaled long: digits without
+    // a '.' are an implied decimal ("12345" with scale 2 is 123.45, returned as 12345), and an explicit
+    // '.' is scaled ("123.4" with scale 2 returns 12340). A '.' needs digits on both sides ("12." and
+    // ".5" are rejected), and ints and longs reject it altogether.
+
+    public static int parseInt(byte[] b, int off, int len) throws NumberFormatException {
+        return (int) parseNumber(b, off, len, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, 0, true);
+    }
+
+    public static int parseInt(byte[] b, int off, int len, int fallback) {
+        return (int) parseNumber(b, off, len, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, fallback, false);
+    }
+
+    public static long parseLong(byte[] b, int off, int len) throws NumberFormatException {
+        return parseNumber(b, off, len, 0, Long.MIN_VALUE, Long.MAX_VALUE, 0, true);
+    }
+
+    public static long parseLong(byte[] b, int off, int len, long fallback) {
+        return parseNumber(b, off, len, 0, Long.MIN_VALUE, Long.MAX_VALUE, fallback, false);
+    }
+
+    public static long parseDecimal(byte[] b, int off, int len, int scale) throws NumberFormatException {
+        return parseNumber(b, off, len, checkScale(scale), Long.MIN_VALUE, Long.MAX_VALUE, 0, true);
+    }
+
+    public static long parseDecimal(byte[] b, int off, int len, int scale, long fallback) {
+        return parseNumber(b, off, len, checkScale(scale), Long.MIN_VALUE, Long.MAX_VALUE, fallback, false);
+    }
+
+    public static int parseInt(CharSequence s, int off, int len) throws NumberFormatException {
+        return (int) parseNumber(s, off, len, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, 0, true);
+    }
+
+    public static int parseInt(CharSequence s, int off, int len, int fallback) {
+        return (int) parseNumber(s, off, len, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, fallback, false);
+    }
+
+    public static long parseLong(CharSequence s, int off, int len) throws NumberFormatException {
+        return parseNumber(s, off, len, 0, Long.MIN_VALUE, Long.MAX_VALUE, 0, true);
+    }
+
+    public static long parseLong(CharSequence s, int off, int len, long fallback) {
+        return parseNumber(s, off, len, 0, Long.MIN_VALUE, Long.MAX_VALUE, fallback, false);
+    }
+
+    public static long parseDecimal(CharSequence s, int off, int len, int scale) throws NumberFormatException {
+        return parseNumber(s, off, len, checkScale(scale), Long.MIN_VALUE, Long.MAX_VALUE, 0, true);
+    }
+
+    public static long parseDecimal(CharSequence s, int off, int len, int scale, long fallback) {
+        return parseNumber(s, off, len, checkScale(scale), Long.MIN_VALUE, Long.MAX_VALUE, fallback, false);
+    }
+
+    private static int checkScale(int scale) {
+        if (scale < 0 || scale > 18) throw new IllegalArgumentException("scale must be between 0 and 18");
+        return scale;
+    }
+
+    // The value is accumulated as a negative number so that min (such as Long.MIN_VALUE) fits
+    static long parseNumber(byte[] b, int off, int len, int scale, long min, long max, long fallback,
+                            boolean strict) {
+        if (b == null) return numberFailed(null, fallback, strict);
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IllegalArgumentException("Invalid range: offset=" + off + ", length=" + len);
+        int start = off;
+        int end = off + len;
+        while (start < end && b[start] == ' ') start++;
+        while (end > start && b[end - 1] == ' ') end--;
+        if (start == end) return numberFailed(b, start, end, fallback, strict);
+
+        boolean neg = false;
+        int i = start;
+        if (b[i] == '-' || b[i] == '+') {
+            neg = b[i] == '-';
+            if (++i == end) return numberFailed(b, start, end, fallback, strict);
+        }
+        final long limit = neg ? min : -max;
+        final int digitsFrom = i;
+        long out = 0;
+
+        // Integer part, 8 digits at a time
+        while (end - i >= 8) {
+            long chunk = eightDigits(b, i);
+            if (chunk < 0) break;
+            if (out < (limit + chunk) / 100_000_000L) return numberFailed(b, start, end, fallback, strict);
+            out = out * 100_000_000L - chunk;
+            i += 8;
+        }
+
+        int fraction = -1;
+        for (; i < end; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) {
+                if (b[i] == '.' && fraction < 0 && scale > 0 && i > digitsFrom) {
+                    fraction = 0;
+                    continue;
+                }
+                return numberFailed(b, start, end, fallback, strict);
+            }
+            if (fraction >= 0 && ++fraction > scale) return numberFailed(b, start, end, fallback, strict);
+            if (out < (limit + d) / 10) return numberFailed(b, start, end, fallback, strict);
+            out = out * 10 - d;
+        }
+        if (fraction == 0) return numberFailed(b, start, end, fallback, strict); // no digit after the '.'
+        for (int k = fraction; k >= 0 && k < scale; k++) {
+            if (out < limit / 10) return numberFailed(b, start, end, fallback, strict);
+            out *= 10;
+        }
+        return neg ? out : -out;
+    }
+
+    static long parseNumber(CharSequence s, int off, int len, int scale, long min, long max, long fallback,
+                            boolean strict) {
+        if (s == null) return numberFailed(null, fallback, strict);
+        if (off < 0 || len < 0 || off + len > s.length())
+            throw new IllegalArgumentException("Invalid range: offset=" + off + ", length=" + len);
+        int start = off;
+        int end = off + len;
+        while (start < end && s.charAt(start) == ' ') start++;
+        while (end > start && s.charAt(end - 1) == ' ') end--;
+        if (start == end) return numberFailed(s.subSequence(start, end), fallback, strict);
+
+        boolean neg = false;
+        int i = start;
+        char c = s.charAt(i);
+        if (c == '-' || c == '+') {
+            neg = c == '-';
+            if (++i == end) return numberFailed(s.subSequence(start, end), fallback, strict);
+        }
+        final long limit = neg ? min : -max;
+        final int digitsFrom = i;
+        long out = 0;
+        int fraction = -1;
+        for (; i < end; i++) {
+            c = s.charAt(i);
+            int d = c - '0';
+            if (d < 0 || d > 9) {
+                if (c == '.' && fraction < 0 && scale > 0 && i > digitsFrom) {
+                    fraction = 0;
+                    continue;
+                }
+                return numberFailed(s.subSequence(start, end), fallback, strict);
+            }
+            if (fraction >= 0 && ++fraction > scale) return numberFailed(s.subSequence(start, end), fallback, strict);
+            if (out < (limit + d) / 10) return numberFailed(s.subSequence(start, end), fallback, strict);
+            out = out * 10 - d;
+        }
+        if (fraction == 0) return numberFailed(s.subSequence(start, end), fallback, strict);
+        for (int k = fraction; k >= 0 && k < scale; k++) {
+            if (out < limit / 10) return numberFailed(s.subSequence(start, end), fallback, strict);
+            out *= 10;
+        }
+        return neg ? out : -out;
+    }
+
+    // Value of the 8 ASCII digits at b[i, i + 8), or -1 if any of them is not a digit
+    private static long eightDigits(byte[] b, int i) {
+        long v = (b[i] & 0xFFL)
+                | (b[i + 1] & 0xFFL) << 8
+                | (b[i + 2] & 0xFFL) << 16
+                | (b[i + 3] & 0xFFL) << 24
+                | (b[i + 4] & 0xFFL) << 32
+                | (b[i + 5] & 0xFFL) << 40
+                | (b[i + 6] & 0xFFL) << 48
+                | (b[i + 7] & 0xFFL) << 56;
+        // every byte is 0x30..0x39: high nibble is 3, and adding 6 does not carry out of the low nibble
+        if (((v & 0xF0F0F0F0F0F0F0F0L) | (((v + 0x0606060606060606L) & 0xF0F0F0F0F0F0F0F0L) >>> 4))
+                != 0x3333333333333333L) return -1;
+        v -= 0x3030303030303030L;
+        v = (v * 10) + (v >>> 8); // pairs of digits
+        return (((v & 0x000000FF000000FFL) * (100 + (1000000L << 32)))
+                + (((v >>> 16) & 0x000000FF000000FFL) * (1 + (10000L << 32)))) >>> 32;
+    }
+
+    private static long numberFailed(byte[] b, int start, int end, long fallback, boolean strict) {
+        if (!strict) return fallback;
+        throw new NumberFormatException(new String(b, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    private static long numberFailed(CharSequence s, long fallback, boolean strict) {
+        if (!strict) return fallback;
+        throw new NumberFormatException(s == null ? "null" : s.toString());
+    }
+
     public static int getHash(String s) {
         if (s == null) return 0;
         int sLen = s.length();
@@ -459,17 +703,45 @@ public class Stu {
     }
 
     public static String bitsToString(long bitflag, int size, char on, char off, boolean reverse) {
+        return bitsToString(bitflag, size, on, off, reverse, new StringBuilder(size < 0 ? 64 : size)).toString();
+    }
+
+    // Appends bitsToString(bitflag, size, on, off, reverse) to sb; for an int flag, pass size 32
+    public static StringBuilder bitsToString(long bitflag, int size, char on, char off, boolean reverse,
+                                             StringBuilder sb) {
+        try {
+            writeBits(bitflag, size, on, off, reverse, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // not thrown by StringBuilder
+        }
+        return sb;
+    }
+
+    public static <A extends Appendable> A bitsToString(long bitflag, int size, char on, char off, boolean reverse,
+                                                       A out) throws IOException {
+        writeBits(bitflag, size, on, off, reverse, out);
+        return out;
+    }
+
+    // Writes bitsToString(bitflag, size, on, off, reverse) at out[offset]; on and off are written as single bytes
+    public static int bitsToString(long bitflag, int size, char on, char off, boolean reverse, byte[] out, int offset) {
         if (size < 0) size = 64;
-        char[] flagString = new char[size];
+        checkOutput(out, offset, size);
+        for (int i = 0; i < size; i++) {
+            int bit = reverse ? i : size - i - 1;
+            out[offset + i] = (byte) ((bitflag & (1L << bit)) != 0 ? on : off);
+        }
+        return offset + size;
+    }
 
-        if (reverse) {
-            for (int i = 0; i < size; i++)
-                flagString[i] = (bitflag & (1L << i)) != 0 ? on : off;
-        } else {
-            for (int i = 0; i < size; i++)
-                flagString[size - i - 1] = (bitflag & (1L << i)) != 0 ? on : off;
+    private static void writeBits(long bitflag, int size, char on, char off, boolean reverse, Appendable out)
+            throws IOException {
+        if (out == null) throw new IllegalArgumentException("null output");
+        if (size < 0) size = 64;
+        for (int i = 0; i < size; i++) {
+            int bit = reverse ? i : size - i - 1;
+            out.append((bitflag & (1L << bit)) != 0 ? on : off);
         }
-        return new String(flagString);
     }
 
     public static String bitsToString(int bitflag) {
@@ -560,38 +832,115 @@ public class Stu {
     }
 
     public static String byteSizeToString(long sizeInByte) {
-        final String sign = sizeInByte > 0 ? "" : "-";
-        final long size = sizeInByte > 0 ? sizeInByte : -sizeInByte;
+        return byteSizeToString(sizeInByte, new StringBuilder(16)).toString();
+    }
 
-        if (size < 1024) return sign + size + "B";
+    public static StringBuilder byteSizeToString(long sizeInByte, StringBuilder sb) {
+        try {
+            writeByteSize(sizeInByte, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb;
+    }
 
-        long unit;
-        String unitString;
+    public static <A extends Appendable> A byteSizeToString(long sizeInByte, A out) throws IOException {
+        writeByteSize(sizeInByte, out);
+        return out;
+    }
 
-        if (size < 1048576) {
-            unit = 1024;
-            unitString = "KB";
-        } else if (size < 1073741824) {
-            unit = 1048576;
-            unitString = "MB";
-        } else {
-            unit = 1073741824;
-            unitString = "GB";
+    /**
+     * Writes byteSizeToString(sizeInByte) into a byte array
+     *
+     * @param sizeInByte size in bytes
+     * @param out        where to write
+     * @param offset     where to start writing
+     * @return position after the written text
+     */
+    public static int byteSizeToString(long sizeInByte, byte[] out, int offset) {
+        long neg = sizeInByte > 0 ? -sizeInByte : sizeInByte; // negative, so that Long.MIN_VALUE fits
+        long unit = byteUnit(neg);
+        long num = -(neg / unit);
+        int digits = getDigits(num);
+        int length = (sizeInByte < 0 ? 1 : 0) + digits + (unit == 1 ? 1 : 5);
+        checkOutput(out, offset, length);
+        int p = offset;
+        if (sizeInByte < 0) out[p++] = '-';
+        for (int k = digits - 1; k >= 0; k--) out[p++] = (byte) digit(num, k);
+        if (unit > 1) {
+            int decimal = (int) (-(neg % unit) * 100 / unit);
+            out[p++] = '.';
+            out[p++] = (byte) ('0' + decimal / 10);
+            out[p++] = (byte) ('0' + decimal % 10);
+            out[p++] = (byte) byteUnitChar(unit);
+        }
+        out[p++] = 'B';
+        return p;
+    }
+
+    private static void writeByteSize(long sizeInByte, Appendable out) throws IOException {
+        if (out == null) throw new IllegalArgumentException("null output");
+        long neg = sizeInByte > 0 ? -sizeInByte : sizeInByte;
+        long unit = byteUnit(neg);
+        if (sizeInByte < 0) out.append('-');
+        writeDigits(-(neg / unit), out);
+        if (unit > 1) {
+            int decimal = (int) (-(neg % unit) * 100 / unit);
+            out.append('.').append((char) ('0' + decimal / 10)).append((char) ('0' + decimal % 10));
+            out.append(byteUnitChar(unit));
         }
+        out.append('B');
+    }
 
-        int num = (int) (size / unit);
-        int decimal = (int) ((size % unit) * 100 / unit);
-        return sign + num + "." + (decimal / 10) + (decimal % 10) + unitString;
+    // Unit for a size given as a negative number
+    private static long byteUnit(long neg) {
+        if (neg > -1024) return 1;
+        if (neg > -1048576) return 1024;
+        if (neg > -1073741824) return 1048576;
+        return 1073741824;
     }
 
+    private static char byteUnitChar(long unit) {return unit == 1024 ? 'K' : unit == 1048576 ? 'M' : 'G';}
+
     public static String toHexString(byte[] bytes) {
-        char[] hexChars = new char[bytes.length * 2];
-        for (int i = 0; i < bytes.length; i++) {
+        return toHexString(bytes, 0, bytes.length, new StringBuilder(bytes.length * 2)).toString();
+    }
+
+    // Appends bytes[off, off + len) in hex to sb
+    public static StringBuilder toHexString(byte[] bytes, int off, int len, StringBuilder sb) {
+        try {
+            writeHex(bytes, off, len, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb;
+    }
+
+    public static <A extends Appendable> A toHexString(byte[] bytes, int off, int len, A out) throws IOException {
+        writeHex(bytes, off, len, out);
+        return out;
+    }
+
+    // Writes bytes[off, off + len) in hex at out[offset]; returns the position after it
+    public static int toHexString(byte[] bytes, int off, int len, byte[] out, int offset) {
+        checkInput(bytes, off, len);
+        checkOutput(out, offset, len * 2);
+        int p = offset;
+        for (int i = off; i < off + len; i++) {
             int v = bytes[i] & 0xFF;
-            hexChars[i * 2] = HEX_ARRAY[v >>> 4];
-            hexChars[i * 2 + 1] = HEX_ARRAY[v & 0x0F];
+            out[p++] = (byte) HEX_ARRAY[v >>> 4];
+            out[p++] = (byte) HEX_ARRAY[v & 0x0F];
+        }
+        return p;
+    }
+
+    private static void writeHex(byte[] bytes, int off, int len, Appendable out) throws IOException {
+        if (out == null) throw new IllegalArgumentException("null output");
+        checkInput(bytes, off, len);
+        for (int i = off; i < off + len; i++) {
+            int v = bytes[i] & 0xFF;
+            out.append(HEX_ARRAY[v >>> 4]).append(HEX_ARRAY[v & 0x0F]);
         }
-        return new String(hexChars);
     }
 
     public static <T> String arrayToString(T[] ts) {
@@ -614,71 +963,187 @@ public class Stu {
     }
 
     public static String intComma(long n) {
-        if (n == 0) return "0";
-        boolean neg = false;
-        if (n < 0) {
-            n = -n;
-            neg = true;
+        return intComma(n, new StringBuilder(26)).toString();
+    }
+
+    public static StringBuilder intComma(long n, StringBuilder sb) {
+        try {
+            writeComma(n, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return sb;
+    }
 
-        int length = getDigits(n);
-        length = length + (length - 1) / 3 + (neg ? 1 : 0);
+    public static <A extends Appendable> A intComma(long n, A out) throws IOException {
+        writeComma(n, out);
+        return out;
+    }
 
-        byte[] out = new byte[length];
-        if (neg) out[0] = '0';
+    /**
+     * Writes intComma(n) into a byte array
+     *
+     * @param n      number to write
+     * @param out    where to write
+     * @param offset where to start writing
+     * @return position after the written number
+     */
+    public static int intComma(long n, byte[] out, int offset) {
+        int digits = getDigits(n);
+        int length = digits + (digits - 1) / 3 + (n < 0 ? 1 : 0);
+        checkOutput(out, offset, length);
+        int p = offset + length;
+        for (int k = 0; k < digits; k++) {
+            if (k > 0 && k % 3 == 0) out[--p] = ',';
+            out[--p] = (byte) digit(n, k);
+        }
+        if (n < 0) out[offset] = '-';
+        return offset + length;
+    }
 
-        int i = length - 1;
-        int j = 0;
-        while (n > 0) {
-            if (j == 3) {
-                out[i--] = ',';
-                j = 0;
-            }
-            out[i--] = (byte) ('0' + n % 10);
-            n /= 10;
-            j++;
+    private static void writeComma(long n, Appendable out) throws IOException {
+        if (out == null) throw new IllegalArgumentException("null output");
+        if (n < 0) out.append('-');
+        for (int k = getDigits(n) - 1; k >= 0; k--) {
+            out.append(digit(n, k));
+            if (k > 0 && k % 3 == 0) out.append(',');
         }
-        return new String(out);
     }
 
     public static String intPadding(long positiveNumber, int length, char padding) {
-        if (positiveNumber < 0) positiveNumber = -positiveNumber;
-        char[] out = new char[length];
-        for (int i = 0; i < length; i++) out[i] = padding;
-        for (int i = length - 1; i >= 0; i--) {
-            if (positiveNumber == 0) break;
-            out[i] = (char) ('0' + positiveNumber % 10);
-            positiveNumber /= 10;
+        if (length < 0) throw new IllegalArgumentException("length must be >= 0");
+        return intPadding(positiveNumber, length, padding, new StringBuilder(length)).toString();
+    }
+
+    public static StringBuilder intPadding(long positiveNumber, int length, char padding, StringBuilder sb) {
+        try {
+            writePadding(positiveNumber, length, padding, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return new String(out);
+        return sb;
+    }
+
+    public static <A extends Appendable> A intPadding(long positiveNumber, int length, char padding, A out)
+            throws IOException {
+        writePadding(positiveNumber, length, padding, out);
+        return out;
+    }
+
+    // Writes intPadding(positiveNumber, length, padding) at out[offset]; padding is written as a single byte
+    public static int intPadding(long positiveNumber, int length, char padding, byte[] out, int offset) {
+        if (length < 0) throw new IllegalArgumentException("length must be >= 0");
+        checkOutput(out, offset, length);
+        int digits = positiveNumber == 0 ? 0 : getDigits(positiveNumber);
+        int p = offset;
+        for (int k = length - 1; k >= 0; k--) out[p++] = (byte) (k < digits ? digit(positiveNumber, k) : padding);
+        return p;
+    }
+
+    // The last length digits of |n|, padded on the left; 0 is all padding
+    private static void writePadding(long n, int length, char padding, Appendable out) throws IOException {
+        if (out == null) throw new IllegalArgumentException("null output");
+        if (length < 0) throw new IllegalArgumentException("length must be >= 0");
+        int digits = n == 0 ? 0 : getDigits(n);
+        for (int k = length - 1; k >= 0; k--) out.append(k < digits ? digit(n, k) : padding);
     }
 
     public static String pad(String s, int min, int max, char padding, boolean leftPadding) {
         if (s == null) return null;
-        int sLen = s.length();
-        if (sLen >= min) return max > 0 ? s.substring(0, max) : s;
-
-        char[] out = new char[min];
-        int i = 0;
+        return pad(s, min, max, padding, leftPadding, new StringBuilder(Math.max(min, 0))).toString();
+    }
 
-        if (leftPadding) {
-            for (; i < min - sLen; i++) out[i] = padding;
-            for (int j = 0; j < sLen; j++) out[i++] = s.charAt(j);
-        } else {
-            for (; i < sLen; i++) out[i] = s.charAt(i);
-            for (; i < min; i++) out[i] = padding;
+    // Appends pad(s, min, max, padding, leftPadding) to sb; null is padded as an empty string
+    public static StringBuilder pad(CharSequence s, int min, int max, char padding, boolean leftPadding,
+                                    StringBuilder sb) {
+        try {
+            writePad(s, min, max, padding, leftPadding, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return new String(out);
+        return sb;
+    }
+
+    public static <A extends Appendable> A pad(CharSequence s, int min, int max, char padding, boolean leftPadding,
+                                              A out) throws IOException {
+        writePad(s, min, max, padding, leftPadding, out);
+        return out;
+    }
+
+    // Writes pad(s, min, max, padding, leftPadding) at out[offset], a char per byte; returns the position after it
+    public static int pad(CharSequence s, int min, int max, char padding, boolean leftPadding, byte[] out, int offset) {
+        int sLen = s == null ? 0 : s.length();
+        int keep = max > 0 && sLen > max ? max : sLen;
+        int length = Math.max(keep, min);
+        checkOutput(out, offset, length);
+        int p = offset;
+        if (leftPadding) while (p < offset + length - keep) out[p++] = (byte) padding;
+        for (int i = 0; i < keep; i++) out[p++] = (byte) s.charAt(i);
+        while (p < offset + length) out[p++] = (byte) padding;
+        return p;
     }
 
     public static String padLeft(String s, int length, char padding) {
         return pad(s, length, length, padding, true);
     }
 
+    public static StringBuilder padLeft(CharSequence s, int length, char padding, StringBuilder sb) {
+        return pad(s, length, length, padding, true, sb);
+    }
+
+    public static <A extends Appendable> A padLeft(CharSequence s, int length, char padding, A out) throws IOException {
+        return pad(s, length, length, padding, true, out);
+    }
+
+    public static int padLeft(CharSequence s, int length, char padding, byte[] out, int offset) {
+        return pad(s, length, length, padding, true, out, offset);
+    }
+
     public static String padRight(String s, int length, char padding) {
         return pad(s, length, length, padding, false);
     }
 
+    public static StringBuilder padRight(CharSequence s, int length, char padding, StringBuilder sb) {
+        return pad(s, length, length, padding, false, sb);
+    }
+
+    public static <A extends Appendable> A padRight(CharSequence s, int length, char padding, A out) throws IOException {
+        return pad(s, length, length, padding, false, out);
+    }
+
+    public static int padRight(CharSequence s, int length, char padding, byte[] out, int offset) {
+        return pad(s, length, length, padding, false, out, offset);
+    }
+
+    // s truncated to max (when max > 0 and s is longer), or padded to min
+    private static void writePad(CharSequence s, int min, int max, char padding, boolean leftPadding, Appendable out)
+            throws IOException {
+        if (out == null) throw new IllegalArgumentException("null output");
+        int sLen = s == null ? 0 : s.length();
+        int keep = max > 0 && sLen > max ? max : sLen;
+        if (leftPadding) for (int i = keep; i < min; i++) out.append(padding);
+        if (keep > 0) out.append(s, 0, keep);
+        if (!leftPadding) for (int i = keep; i < min; i++) out.append(padding);
+    }
+
+    // Digit k of |n|, counting from the right
+    private static char digit(long n, int k) {return (char) ('0' + Math.abs(n / POW10[k] % 10));}
+
+    private static void writeDigits(long n, Appendable out) throws IOException {
+        for (int k = getDigits(n) - 1; k >= 0; k--) out.append(digit(n, k));
+    }
+
+    private static void checkInput(byte[] b, int off, int len) {
+        if (b == null) throw new IllegalArgumentException("null input");
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IllegalArgumentException("Invalid range: offset=" + off + ", length=" + len);
+    }
+
+    private static void checkOutput(byte[] out, int offset, int length) {
+        if (out == null) throw new IllegalArgumentException("null output");
+        if (offset < 0 || offset + length > out.length) throw new IllegalArgumentException("Invalid offset: " + offset);
+    }
+
 
     public static String trimLeft(String s) {
         if (s == null) return null;
@@ -730,6 +1195,26 @@ public class Stu {
         }
     }
 
+    /**
+     * Loads lines of a local file through memory-mapped windows, without the wait of loadLines(InputStreamReader).
+     * See LineLoader for parallel loading and for lines as byte ranges.
+     *
+     * @param path    file to read
+     * @param charset how to decode the lines
+     * @param loader  receives the line number (starting with 1) and the line
+     * @return number of lines
+     * @throws IOException any IO issues
+     */
+    public static int loadLines(Path path, Charset charset, BiConsumer<Integer, String> loader) throws IOException {
+        if (charset == null) throw new IllegalArgumentException("null charset");
+        return (int) LineLoader.readFile(path, line -> loader.accept((int) line.getNumber(), line.toString(charset)));
+    }
+
+    // Decodes with the platform charset, like loadLines(InputStream)
+    public static int loadLines(Path path, BiConsumer<Integer, String> loader) throws IOException {
+        return loadLines(path, Charset.defaultCharset(), loader);
+    }
+
     public static int loadLines(InputStreamReader isr, BiConsumer<Integer, String> loader) throws IOException, InterruptedException {
         try (BufferedReader br = new BufferedReader(isr)) {
             if (!isr.ready()) Thread.sleep(500);
@@ -746,8 +1231,14 @@ public class Stu {
         return -1;
     }
 
+    // Decodes with the platform charset
     public static int loadLines(InputStream inputStream, BiConsumer<Integer, String> loader) throws IOException, InterruptedException {
-        try (InputStreamReader is = new InputStreamReader(inputStream)) {
+        return loadLines(inputStream, Charset.defaultCharset(), loader);
+    }
+
+    public static int loadLines(InputStream inputStream, Charset charset, BiConsumer<Integer, String> loader) throws IOException, InterruptedException {
+        if (charset == null) throw new IllegalArgumentException("null charset");
+        try (InputStreamReader is = new InputStreamReader(inputStream, charset)) {
             return loadLines(is, loader);
         }
     }
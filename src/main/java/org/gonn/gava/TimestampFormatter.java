@@ -0,0 +1,167 @@
+package org.gonn.gava;
+
+/**
+ * Formats epoch milliseconds as ISO-8601 with a fixed hour offset, such as 2024-03-09T14:05:09.042-06:00.
+ * The "yyyy-MM-ddTHH:mm:" prefix is cached per minute, so most calls only write the seconds and
+ * milliseconds. The cache is an immutable object swapped through a volatile field, so one formatter
+ * can be shared by threads. Output is always LENGTH characters and can be written into a caller's
+ * char[], byte[] or StringBuilder.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         TimestampFormatter f = TimestampFormatter.newInstance(); // Stu.OFFSET_HR
+ *         StringBuilder sb = new StringBuilder();
+ *         f.format(System.currentTimeMillis(), sb).append("  ").append(msg);
+ * </code></pre>
+ */
+public class TimestampFormatter {
+    public static final int LENGTH = 29;
+    private static final int PREFIX_LENGTH = 17; // yyyy-MM-ddTHH:mm:
+
+    private final int offsetHr;
+    private final long offsetMillis;
+    private final char[] suffix; // +HH:00
+    private volatile Prefix prefix = new Prefix(Long.MIN_VALUE, new char[PREFIX_LENGTH]);
+
+    /**
+     * @param offsetHr hours from UTC, -23 to 23 (0 for UTC, -6 for CST)
+     */
+    public TimestampFormatter(int offsetHr) {
+        if (offsetHr > 23 || offsetHr < -23) throw new IllegalArgumentException("Invalid offsetHr: " + offsetHr);
+        this.offsetHr = offsetHr;
+        this.offsetMillis = offsetHr * Stu.HOUR;
+        int h = Math.abs(offsetHr);
+        this.suffix = new char[]{offsetHr < 0 ? '-' : '+', (char) ('0' + h / 10), (char) ('0' + h % 10), ':', '0', '0'};
+    }
+
+    // At Stu.OFFSET_HR, or UTC if it is out of range
+    public static TimestampFormatter newInstance() {return new TimestampFormatter(Stu.validOffsetHr(Stu.OFFSET_HR));}
+
+    public int getOffsetHr() {return this.offsetHr;}
+
+    /**
+     * @param milliseconds epoch milliseconds
+     * @param out          where to write; needs LENGTH chars from off
+     * @param off          where to start writing
+     * @return position after the timestamp
+     */
+    public int format(long milliseconds, char[] out, int off) {
+        if (out == null) throw new IllegalArgumentException("null output");
+        if (off < 0 || off + LENGTH > out.length) throw new IllegalArgumentException("Invalid offset: " + off);
+        long local = milliseconds + this.offsetMillis;
+        long minute = Math.floorDiv(local, Stu.MINUTE);
+        int ms = (int) (local - minute * Stu.MINUTE); // 0..59999
+
+        System.arraycopy(this.prefix(minute), 0, out, off, PREFIX_LENGTH);
+        int p = off + PREFIX_LENGTH;
+        int sec = ms / 1000;
+        ms %= 1000;
+        out[p++] = (char) ('0' + sec / 10);
+        out[p++] = (char) ('0' + sec % 10);
+        out[p++] = '.';
+        out[p++] = (char) ('0' + ms / 100);
+        out[p++] = (char) ('0' + ms / 10 % 10);
+        out[p++] = (char) ('0' + ms % 10);
+        System.arraycopy(this.suffix, 0, out, p, this.suffix.length);
+        return p + this.suffix.length;
+    }
+
+    public int format(long milliseconds, byte[] out, int off) {
+        if (out == null) throw new IllegalArgumentException("null output");
+        if (off < 0 || off + LENGTH > out.length) throw new IllegalArgumentException("Invalid offset: " + off);
+        long local = milliseconds + this.offsetMillis;
+        long minute = Math.floorDiv(local, Stu.MINUTE);
+        int ms = (int) (local - minute * Stu.MINUTE);
+
+        char[] prefix = this.prefix(minute);
+        for (int i = 0; i < PREFIX_LENGTH; i++) out[off + i] = (byte) prefix[i];
+        int p = off + PREFIX_LENGTH;
+        int sec = ms / 1000;
+        ms %= 1000;
+        out[p++] = (byte) ('0' + sec / 10);
+        out[p++] = (byte) ('0' + sec % 10);
+        out[p++] = '.';
+        out[p++] = (byte) ('0' + ms / 100);
+        out[p++] = (byte) ('0' + ms / 10 % 10);
+        out[p++] = (byte) ('0' + ms % 10);
+        for (char c : this.suffix) out[p++] = (byte) c;
+        return p;
+    }
+
+    public StringBuilder format(long milliseconds, StringBuilder sb) {
+        if (sb == null) throw new IllegalArgumentException("null output");
+        long local = milliseconds + this.offsetMillis;
+        long minute = Math.floorDiv(local, Stu.MINUTE);
+        int ms = (int) (local - minute * Stu.MINUTE);
+        int sec = ms / 1000;
+        ms %= 1000;
+        return sb.append(this.prefix(minute))
+                .append((char) ('0' + sec / 10))
+                .append((char) ('0' + sec % 10))
+                .append('.')
+                .append((char) ('0' + ms / 100))
+                .append((char) ('0' + ms / 10 % 10))
+                .append((char) ('0' + ms % 10))
+                .append(this.suffix);
+    }
+
+    public String format(long milliseconds) {
+        char[] out = new char[LENGTH];
+        this.format(milliseconds, out, 0);
+        return new String(out);
+    }
+
+    // yyyy-MM-ddTHH:mm: of the local minute; rebuilt once a minute
+    private char[] prefix(long minute) {
+        Prefix p = this.prefix;
+        if (p.minute == minute) return p.chars;
+
+        long day = Math.floorDiv(minute, 24 * 60);
+        int minuteOfDay = (int) (minute - day * 24 * 60);
+        char[] c = new char[PREFIX_LENGTH];
+        civil(day, c);
+        c[10] = 'T';
+        c[11] = (char) ('0' + minuteOfDay / 60 / 10);
+        c[12] = (char) ('0' + minuteOfDay / 60 % 10);
+        c[13] = ':';
+        c[14] = (char) ('0' + minuteOfDay % 60 / 10);
+        c[15] = (char) ('0' + minuteOfDay % 60 % 10);
+        c[16] = ':';
+        this.prefix = new Prefix(minute, c);
+        return c;
+    }
+
+    // Writes yyyy-MM-dd of an epoch day (proleptic Gregorian); years outside 0..9999 are written mod 10000
+    private static void civil(long epochDay, char[] c) {
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int d = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int m = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+        int year = (int) Math.floorMod(y, 10000);
+        c[0] = (char) ('0' + year / 1000);
+        c[1] = (char) ('0' + year / 100 % 10);
+        c[2] = (char) ('0' + year / 10 % 10);
+        c[3] = (char) ('0' + year % 10);
+        c[4] = '-';
+        c[5] = (char) ('0' + m / 10);
+        c[6] = (char) ('0' + m % 10);
+        c[7] = '-';
+        c[8] = (char) ('0' + d / 10);
+        c[9] = (char) ('0' + d % 10);
+    }
+
+    private static final class Prefix {
+        private final long minute;
+        private final char[] chars;
+
+        Prefix(long minute, char[] chars) {
+            this.minute = minute;
+            this.chars = chars;
+        }
+    }
+}
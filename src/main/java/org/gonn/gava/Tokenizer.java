@@ -0,0 +1,183 @@
+package org.gonn.gava;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a delimited line once and gives access to its fields by index, without substrings.
+ * reset() finds every delimiter in a single pass and keeps their positions in an int[] that is
+ * reused for the next line. Negative indexes count from the end, as in Stu.getNth().
+ * Bytes are read as US ASCII. This is not thread-safe.
+ * <br>
+ * Example:
+ * <pre><code>
+ *         Tokenizer t = Tokenizer.newInstance('|');
+ *         for (String line : lines) {
+ *             t.reset(line);
+ *             if (!t.equals(0, "ORD")) continue;
+ *             long qty = t.getLong(4, 0);
+ *             long price = t.getDecimal(5, 2, 0); // unscaled, in cents
+ *             String sku = t.get(-1);
+ *         }
+ * </code></pre>
+ */
+public class Tokenizer {
+    private final char delim;
+    private int[] ends = new int[16]; // ends[i]: end of field i (its delimiter, or the end of input)
+    private int count = 0;
+    private int from = 0;
+    private byte[] bytes = null; // either bytes or chars is set
+    private CharSequence chars = null;
+
+    public Tokenizer(char delim) {this.delim = delim;}
+
+    public static Tokenizer newInstance(char delim) {return new Tokenizer(delim);}
+
+    public Tokenizer reset(CharSequence s) {
+        if (s == null) throw new IllegalArgumentException("null input");
+        return this.reset(s, 0, s.length());
+    }
+
+    public Tokenizer reset(CharSequence s, int off, int len) {
+        if (s == null) throw new IllegalArgumentException("null input");
+        checkRange(off, len, s.length());
+        this.bytes = null;
+        this.chars = s;
+        this.from = off;
+        this.count = 0;
+        final int end = off + len;
+        final char d = this.delim;
+        for (int i = off; i < end; i++) {
+            if (s.charAt(i) == d) this.add(i);
+        }
+        this.add(end);
+        return this;
+    }
+
+    public Tokenizer reset(byte[] b) {
+        if (b == null) throw new IllegalArgumentException("null input");
+        return this.reset(b, 0, b.length);
+    }
+
+    public Tokenizer reset(byte[] b, int off, int len) {
+        if (b == null) throw new IllegalArgumentException("null input");
+        checkRange(off, len, b.length);
+        this.chars = null;
+        this.bytes = b;
+        this.from = off;
+        this.count = 0;
+        final int end = off + len;
+        final byte d = (byte) this.delim;
+        int i = off;
+        while ((i = ByteSearch.indexOf(b, i, end, d)) >= 0) this.add(i++);
+        this.add(end);
+        return this;
+    }
+
+    public Tokenizer reset(FixedRecord r) {
+        if (r == null) throw new IllegalArgumentException("null input");
+        return this.reset(r.array(), r.offset(), r.length());
+    }
+
+    private void add(int end) {
+        if (this.count == this.ends.length) this.ends = Arrays.copyOf(this.ends, this.count * 2);
+        this.ends[this.count++] = end;
+    }
+
+    // Number of fields; a line without delimiters has one field
+    public int size() {return this.count;}
+
+    // Where field i starts in the input
+    public int start(int i) {
+        int n = this.index(i);
+        if (n < 0) throw new IllegalArgumentException("Invalid index: " + i);
+        return n == 0 ? this.from : this.ends[n - 1] + 1;
+    }
+
+    public int end(int i) {
+        int n = this.index(i);
+        if (n < 0) throw new IllegalArgumentException("Invalid index: " + i);
+        return this.ends[n];
+    }
+
+    public int length(int i) {return this.end(i) - this.start(i);}
+
+    // Returns null if there is no field i
+    public String get(int i) {
+        int n = this.index(i);
+        if (n < 0) return null;
+        int s = n == 0 ? this.from : this.ends[n - 1] + 1;
+        int e = this.ends[n];
+        if (this.bytes != null) return new String(this.bytes, s, e - s, StandardCharsets.US_ASCII);
+        return this.chars.subSequence(s, e).toString();
+    }
+
+    // Same as get(i), with fields of byte input looked up in the cache
+    public String get(int i, InternCache cache) {
+        int n = this.index(i);
+        if (n < 0) return null;
+        if (cache == null || this.bytes == null) return this.get(i);
+        int s = n == 0 ? this.from : this.ends[n - 1] + 1;
+        return cache.get(this.bytes, s, this.ends[n] - s);
+    }
+
+    /**
+     * Field i equals the value, without making a String of the field.
+     *
+     * @param i     field index
+     * @param value value to compare
+     * @return false if there is no field i
+     */
+    public boolean equals(int i, CharSequence value) {
+        int n = this.index(i);
+        if (n < 0 || value == null) return false;
+        int s = n == 0 ? this.from : this.ends[n - 1] + 1;
+        int len = this.ends[n] - s;
+        if (len != value.length()) return false;
+        for (int k = 0; k < len; k++) {
+            char c = this.bytes != null ? (char) (this.bytes[s + k] & 0xFF) : this.chars.charAt(s + k);
+            if (c != value.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    public boolean isEmpty(int i) {
+        int n = this.index(i);
+        return n < 0 || this.ends[n] == (n == 0 ? this.from : this.ends[n - 1] + 1);
+    }
+
+    // Parses field i in place; see Stu.parseInt(byte[], int, int, int). Returns fallback if there is no field i.
+    public int getInt(int i, int fallback) {
+        return (int) this.parse(i, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, fallback);
+    }
+
+    public long getLong(int i, long fallback) {
+        return this.parse(i, 0, Long.MIN_VALUE, Long.MAX_VALUE, fallback);
+    }
+
+    // Unscaled value of a decimal field; see Stu.parseDecimal(byte[], int, int, int, long)
+    public long getDecimal(int i, int scale, long fallback) {
+        if (scale < 0 || scale > 18) throw new IllegalArgumentException("scale must be between 0 and 18");
+        return this.parse(i, scale, Long.MIN_VALUE, Long.MAX_VALUE, fallback);
+    }
+
+    private long parse(int i, int scale, long min, long max, long fallback) {
+        int n = this.index(i);
+        if (n < 0) return fallback;
+        int s = n == 0 ? this.from : this.ends[n - 1] + 1;
+        int len = this.ends[n] - s;
+        if (this.bytes != null) return Stu.parseNumber(this.bytes, s, len, scale, min, max, fallback, false);
+        return Stu.parseNumber(this.chars, s, len, scale, min, max, fallback, false);
+    }
+
+    // Resolves a negative index from the end; -1 if out of range
+    private int index(int i) {
+        int n = i < 0 ? i + this.count : i;
+        return (n < 0 || n >= this.count) ? -1 : n;
+    }
+
+    private static void checkRange(int off, int len, int size) {
+        if (off < 0 || len < 0 || off + len > size)
+            throw new IllegalArgumentException("Invalid range: offset=" + off + ", length=" + len);
+    }
+}